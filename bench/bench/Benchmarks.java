@@ -0,0 +1,137 @@
+package bench;
+
+import ast.StmtNode;
+import ast.XMLPrinter;
+import error.ErrorCollector;
+import lexer.Lexer;
+import lexer.SourceBuffer;
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
+import lexer.XMLTokenReader;
+import parser.ParallelParser;
+import parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Benchmarks of the lexer, the parser, the xml printer and the xml token
+ * reader, over generated sources of every shape and each size.
+ *
+ * USAGE: Benchmarks [-size bytes,...] [-shape name,...] [-filter text]
+ *                   [-warmup ms] [-time ms]
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) {
+        int[] sizes = {4 * 1024, 1024 * 1024};
+        SourceGenerator.Shape[] shapes = SourceGenerator.Shape.values();
+        String filter = "";
+        long warmup = 1000;
+        long time = 2000;
+
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-size":
+                    String[] parts = args[i+1].split(",");
+                    sizes = new int[parts.length];
+                    for(int j=0; j<parts.length; ++j)
+                        sizes[j] = Integer.parseInt(parts[j]);
+                    break;
+                case "-shape":
+                    String[] names = args[i+1].split(",");
+                    shapes = new SourceGenerator.Shape[names.length];
+                    for(int j=0; j<names.length; ++j)
+                        shapes[j] = SourceGenerator.Shape.valueOf(names[j].toUpperCase());
+                    break;
+                case "-filter": filter = args[i+1]; break;
+                case "-warmup": warmup = Long.parseLong(args[i+1]); break;
+                case "-time": time = Long.parseLong(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        Harness harness = new Harness(warmup, time);
+        for(SourceGenerator.Shape shape : shapes) {
+            for(int size : sizes) {
+                String source = SourceGenerator.generate(shape, size);
+                String suffix = "[" + shape.name().toLowerCase() + ", " + source.length() + "]";
+                run(harness, filter, source, suffix);
+            }
+        }
+    }
+
+    private static void run(Harness harness, String filter, String source, String suffix) {
+        long bytes = source.getBytes(StandardCharsets.UTF_8).length;
+        TokenStream tokens = new Lexer(new SourceBuffer(source)).scanAll();
+        long count = tokens.size();
+        StmtNode.CompilationUnit tree = new Parser(tokens).parse();
+        if(ErrorCollector.getInstance().hasError()) {
+            // Errors would pile up in the collector over the runs.
+            ErrorCollector.getInstance().setFile_name("generated " + suffix);
+            ErrorCollector.getInstance().show();
+            throw new IllegalStateException("generated source does not parse");
+        }
+        byte[] xml = toXML(tokens);
+
+        if(("lex.scan " + suffix).contains(filter)) {
+            harness.run("lex.scan " + suffix, bytes, count, () -> {
+                Lexer lexer = new Lexer(new SourceBuffer(source));
+                int scanned = 0;
+                while(lexer.scan().type != TokenType.EOF)
+                    scanned += 1;
+                return scanned;
+            });
+        }
+        if(("lex.scanAll " + suffix).contains(filter))
+            harness.run("lex.scanAll " + suffix, bytes, count,
+                    () -> new Lexer(new SourceBuffer(source)).scanAll());
+        if(("parse " + suffix).contains(filter))
+            harness.run("parse " + suffix, 0, count, () -> new Parser(tokens).parse());
+        if(("parse.memo " + suffix).contains(filter)) {
+            harness.run("parse.memo " + suffix, 0, count, () -> {
+                Parser parser = new Parser(tokens);
+                parser.setMemoize(true);
+                return parser.parse();
+            });
+        }
+        if(("parse.parallel " + suffix).contains(filter))
+            harness.run("parse.parallel " + suffix, 0, count, () -> new ParallelParser().parse(tokens));
+        if(("parse.iter " + suffix).contains(filter)) {
+            harness.run("parse.iter " + suffix, 0, count, () -> {
+                Parser parser = new Parser(tokens);
+                parser.setIterative(true);
+                return parser.parse();
+            });
+        }
+        if(("print " + suffix).contains(filter))
+            harness.run("print " + suffix, 0, 0, () -> new XMLPrinter().print(tree));
+        if(("xml.read " + suffix).contains(filter)) {
+            harness.run("xml.read " + suffix, xml.length, count, () -> {
+                try {
+                    return XMLTokenReader.read(new ByteArrayInputStream(xml));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * The xml that LexerRunner writes for the tokens.
+     */
+    private static byte[] toXML(TokenStream tokens) {
+        StringBuilder builder = new StringBuilder("<project>\n");
+        for(int i=0; i<tokens.size(); ++i) {
+            Token token = tokens.get(i);
+            builder.append(token.toXMLString(1));
+        }
+        builder.append("</project>\n\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
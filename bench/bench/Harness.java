@@ -0,0 +1,62 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * A minimal benchmark harness: each benchmark is warmed up, then timed
+ * over a number of rounds, and the median round is reported.
+ */
+public class Harness {
+
+    // Results are stored here so that the JIT cannot drop the work.
+    public static volatile Object sink;
+
+    private final long warmup_nanos;
+    private final long measure_nanos;
+
+    public Harness(long warmup_millis, long measure_millis) {
+        this.warmup_nanos = warmup_millis * 1000000L;
+        this.measure_nanos = measure_millis * 1000000L;
+    }
+
+    /**
+     * Run a benchmark and print a line of results.
+     * @param bytes size of the input, for MB/s.
+     * @param tokens number of tokens of the input, for tokens/s.
+     */
+    public void run(String name, long bytes, long tokens, Supplier<?> body) {
+        long deadline = System.nanoTime() + warmup_nanos;
+        while(System.nanoTime() < deadline)
+            sink = body.get();
+
+        // Rounds of at least 10ms, so fast bodies are not dominated by timer noise.
+        long[] rounds = new long[16];
+        int count = 0;
+        long total = 0;
+        while(total < measure_nanos || count < 5) {
+            int iterations = 0;
+            long begin = System.nanoTime();
+            long now;
+            do {
+                sink = body.get();
+                iterations += 1;
+                now = System.nanoTime();
+            } while(now - begin < 10000000L);
+            if(count == rounds.length)
+                rounds = Arrays.copyOf(rounds, count * 2);
+            rounds[count++] = (now - begin) / iterations;
+            total += now - begin;
+        }
+        Arrays.sort(rounds, 0, count);
+        double nanos = rounds[count / 2];
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("%-40s %12.3f ms/op", name, nanos / 1e6));
+        if(bytes > 0)
+            line.append(String.format(" %10.1f MB/s", bytes / nanos * 1e9 / (1 << 20)));
+        if(tokens > 0)
+            line.append(String.format(" %12.0f tokens/s", tokens / nanos * 1e9));
+        System.out.println(line);
+    }
+}
@@ -0,0 +1,119 @@
+package bench;
+
+import ast.StmtNode;
+import ast.XMLPrinter;
+import error.CompilerError;
+import error.ErrorCollector;
+import lexer.Lexer;
+import lexer.SourceBuffer;
+import lexer.TokenStream;
+import parser.Parser;
+
+import java.util.Random;
+
+/**
+ * Parse random programs, some of them broken, with and without the
+ * iterative parser, and check that both give the same tree and errors.
+ * Then parse deeply nested sources, which must parse without errors.
+ * Exits with status 1 on the first failure.
+ *
+ * USAGE: IterativeCheck [-programs n] [-depth n]
+ */
+public class IterativeCheck {
+
+    public static void main(String[] args) {
+        int programs = 20000;
+        int depth = 10000;
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-programs": programs = Integer.parseInt(args[i+1]); break;
+                case "-depth": depth = Integer.parseInt(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        int broken = 0;
+        for(int n=0; n<programs; ++n) {
+            Random random = new Random(n);
+            String source = SourceGenerator.program(random);
+            if(random.nextInt(3) > 0)
+                source = SourceGenerator.mutate(random, source);
+            String recursive = parse(source, false);
+            String iterative = parse(source, true);
+            if(!recursive.equals(iterative))
+                fail("program " + n + " parses differently:\n" + source + "\nrecursive:\n" + recursive + "\niterative:\n" + iterative);
+            if(recursive.startsWith("error"))
+                broken += 1;
+        }
+        System.out.println(programs + " programs (" + broken + " broken) parse the same with the iterative parser.");
+
+        String[][] nested = {
+                {"parentheses", "int x = ", "(", "1", ")", ";\n"},
+                {"blocks", "int f() { ", "{", "", "}", " }\n"},
+                {"if statements", "int f() { ", "if (1) ", ";", "", " }\n"},
+                {"else if chains", "int f() { if (1) ; ", "else if (1) ; ", "", "", " }\n"},
+                {"while loops", "int f() { ", "while (1) ", ";", "", " }\n"},
+                {"unary operators", "int x = ", "- ", "1", "", ";\n"},
+                {"casts", "int x = ", "(int) ", "1", "", ";\n"},
+                {"assignments", "int f() { ", "a = ", "1", "", "; }\n"},
+                {"subscripts", "int x = ", "a[", "1", "]", ";\n"},
+                {"calls", "int x = ", "f(", "1", ")", ";\n"},
+                {"binary operators", "int x = ", "1 + ", "1", "", ";\n"},
+        };
+        for(String[] shape : nested) {
+            StringBuilder builder = new StringBuilder(shape[1]);
+            for(int d=0; d<depth; ++d)
+                builder.append(shape[2]);
+            builder.append(shape[3]);
+            for(int d=0; d<depth; ++d)
+                builder.append(shape[4]);
+            builder.append(shape[5]);
+            String error = parseNested(builder.toString());
+            if(error != null)
+                fail(depth + " nested " + shape[0] + ": " + error);
+        }
+        System.out.println(nested.length + " kinds of nesting " + depth + " deep parse without errors.");
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+
+    /**
+     * @return the errors, and the tree in xml if there is one.
+     */
+    private static String parse(String source, boolean iterative) {
+        TokenStream tokens = new Lexer(new SourceBuffer(source)).scanAll();
+        ErrorCollector errors = new ErrorCollector();
+        Parser parser = new Parser(tokens, errors);
+        parser.setIterative(iterative);
+        StmtNode.CompilationUnit tree = parser.parse();
+
+        StringBuilder builder = new StringBuilder(errors.hasError() ? "errors\n" : "tree\n");
+        for(CompilerError error : errors.getErrors())
+            builder.append(error.getDescription()).append('\n');
+        // Nodes without an xml form of their own print their identity hash.
+        if(tree != null)
+            builder.append(new XMLPrinter().print(tree).replaceAll("@[0-9a-f]+", ""));
+        return builder.toString();
+    }
+
+    /**
+     * Parse a deeply nested source. The tree is too deep to print.
+     * @return the first error, null if there is none.
+     */
+    private static String parseNested(String source) {
+        TokenStream tokens = new Lexer(new SourceBuffer(source)).scanAll();
+        ErrorCollector errors = new ErrorCollector();
+        Parser parser = new Parser(tokens, errors);
+        // Without memoization nested parentheses take exponential time.
+        parser.setMemoize(true);
+        StmtNode.CompilationUnit tree = parser.parse();
+        if(errors.hasError())
+            return errors.getErrors().get(0).getDescription();
+        return tree == null ? "no tree" : null;
+    }
+}
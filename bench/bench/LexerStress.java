@@ -0,0 +1,90 @@
+package bench;
+
+import lexer.Lexer;
+import lexer.SourceBuffer;
+import lexer.Token;
+import lexer.TokenStream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lex many sources at the same time, each with its own lexer, and check
+ * that every source numbers its tokens 0..n-1 and gets the same tokens as
+ * a lexer running alone. Exits with status 1 on the first failure.
+ *
+ * USAGE: LexerStress [-files n] [-threads n]
+ */
+public class LexerStress {
+
+    public static void main(String[] args) throws Exception {
+        int files = 400;
+        int threads = 16;
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-files": files = Integer.parseInt(args[i+1]); break;
+                case "-threads": threads = Integer.parseInt(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        SourceGenerator.Shape[] shapes = SourceGenerator.Shape.values();
+        String[] sources = new String[files];
+        TokenStream[] expected = new TokenStream[files];
+        for(int i=0; i<files; ++i) {
+            sources[i] = SourceGenerator.generate(shapes[i % shapes.length], 1024 + i * 7919 % 65536);
+            expected[i] = new Lexer(new SourceBuffer(sources[i])).scanAll();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        for(int i=0; i<files; ++i) {
+            final String source = sources[i];
+            final TokenStream tokens = expected[i];
+            results.add(pool.submit(() -> check(source, tokens)));
+        }
+
+        int failed = 0;
+        for(int i=0; i<files; ++i) {
+            String error = results.get(i).get();
+            if(error != null) {
+                System.out.println("file " + i + ": " + error);
+                failed += 1;
+            }
+        }
+        pool.shutdown();
+
+        if(failed > 0) {
+            System.out.println(failed + " of " + files + " files failed.");
+            System.exit(1);
+        }
+        System.out.println(files + " files lexed on " + threads + " threads, all numbered correctly.");
+    }
+
+    /**
+     * Lex a source into tokens one by one.
+     * @return what went wrong, null if nothing.
+     */
+    private static String check(String source, TokenStream expected) {
+        Iterator<Token> tokens = new Lexer(new SourceBuffer(source)).tokens();
+        int count = 0;
+        while(tokens.hasNext()) {
+            Token token = tokens.next();
+            if(token.number != count)
+                return "token " + count + " is numbered " + token.number;
+            if(count >= expected.size() || token.type != expected.type(count)
+                    || token.line != expected.line(count) || token.offset != expected.start(count))
+                return "token " + count + " differs from a sequential scan";
+            count += 1;
+        }
+        if(count != expected.size())
+            return count + " tokens instead of " + expected.size();
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import ast.StmtNode;
+import ast.XMLPrinter;
+import error.CompilerError;
+import error.ErrorCollector;
+import lexer.Lexer;
+import lexer.SourceBuffer;
+import lexer.TokenStream;
+import parser.ParallelParser;
+import parser.Parser;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parse sources of many random declarations, some of them broken, both
+ * sequentially and in parallel, with and without the iterative parser,
+ * and check that all of them give the same tree and errors. Exits with
+ * status 1 on the first failure.
+ *
+ * USAGE: ParallelCheck [-sources n] [-threads n]
+ */
+public class ParallelCheck {
+
+    public static void main(String[] args) {
+        int sources = 50;
+        int threads = 4;
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-sources": sources = Integer.parseInt(args[i+1]); break;
+                case "-threads": threads = Integer.parseInt(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int broken = 0;
+        for(int n=0; n<sources; ++n) {
+            Random random = new Random(n);
+            StringBuilder builder = new StringBuilder();
+            // Programs that parse, and in every other source a few broken ones.
+            for(int i=0; i<600; ) {
+                String program = SourceGenerator.program(random);
+                if(n % 2 == 0 && random.nextInt(200) == 0)
+                    program = SourceGenerator.mutate(random, program);
+                else if(!parses(program))
+                    continue;
+                builder.append(program);
+                i += 1;
+            }
+            String source = builder.toString();
+            TokenStream tokens = new Lexer(new SourceBuffer(source)).scanAll();
+
+            ErrorCollector errors = new ErrorCollector();
+            String expected = describe(new Parser(tokens, errors).parse(), errors);
+            if(errors.hasError())
+                broken += 1;
+            for(boolean iterative : new boolean[] {false, true}) {
+                ParallelParser parser = new ParallelParser(pool, errors = new ErrorCollector());
+                parser.setIterative(iterative);
+                String parallel = describe(parser.parse(tokens), errors);
+                if(!parallel.equals(expected))
+                    fail("source " + n + " parses differently in parallel" + (iterative ? ", iterative" : ""));
+            }
+        }
+        pool.shutdown();
+        System.out.println(sources + " sources (" + broken + " broken) parse the same on " + threads + " threads.");
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+
+    private static boolean parses(String source) {
+        ErrorCollector errors = new ErrorCollector();
+        new Parser(new Lexer(new SourceBuffer(source)).scanAll(), errors).parse();
+        return !errors.hasError();
+    }
+
+    /**
+     * @return the errors, and the tree in xml if there is one.
+     */
+    private static String describe(StmtNode.CompilationUnit tree, ErrorCollector errors) {
+        StringBuilder builder = new StringBuilder();
+        for(CompilerError error : errors.getErrors())
+            builder.append(error.getDescription()).append('\n');
+        // Nodes without an xml form of their own print their identity hash.
+        if(tree != null)
+            builder.append(new XMLPrinter().print(tree).replaceAll("@[0-9a-f]+", ""));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,266 @@
+package bench;
+
+import ast.DeclNode;
+import ast.ExprNode;
+import ast.StmtNode;
+import ast.XMLPrinter;
+import error.ErrorCollector;
+import lexer.Lexer;
+import lexer.SourceBuffer;
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
+import parser.Parser;
+
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Parse random expressions over every binary operator, and check that the
+ * parser builds the same tree as a recursive descent with one rule per
+ * precedence level, the way binary expressions were parsed before
+ * precedence climbing. Exits with status 1 on the first failure.
+ *
+ * USAGE: PrecedenceCheck [-expressions n]
+ */
+public class PrecedenceCheck {
+
+    private static final String[] BINARY = {
+            "+", "-", "*", "/", "%", "<<", ">>", "<", ">", "<=", ">=", "==", "!=", "&", "^", "|", "&&", "||"
+    };
+
+    public static void main(String[] args) {
+        int expressions = 20000;
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-expressions": expressions = Integer.parseInt(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        for(int n=0; n<expressions; ++n) {
+            Random random = new Random(n);
+            String source = "int x = " + expression(random, 1 + random.nextInt(6)) + ";\n";
+            TokenStream tokens = new Lexer(new SourceBuffer(source)).scanAll();
+
+            ErrorCollector errors = new ErrorCollector();
+            StmtNode.CompilationUnit tree = new Parser(tokens, errors).parse();
+            if(tree == null || errors.hasError())
+                fail("expression " + n + " does not parse: " + source);
+
+            Vector<StmtNode.Declaration> items = new Vector<>();
+            items.add(new Reference(tokens).parseDeclaration());
+            StmtNode.CompilationUnit expected = new StmtNode.CompilationUnit(items);
+
+            if(!print(tree).equals(print(expected)))
+                fail("expression " + n + " parses differently: " + source);
+        }
+        System.out.println(expressions + " expressions parse the same as by recursive descent.");
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+
+    private static String print(StmtNode.CompilationUnit tree) {
+        // Nodes without an xml form of their own print their identity hash.
+        return new XMLPrinter().print(tree).replaceAll("@[0-9a-f]+", "");
+    }
+
+    private static String expression(Random random, int depth) {
+        switch (random.nextInt(depth <= 0 ? 2 : 8)) {
+            case 0: return "abc".charAt(random.nextInt(3)) + "";
+            case 1: return Integer.toString(random.nextInt(100));
+            case 2: return "(" + expression(random, depth - 1) + ")";
+            case 3: return "-+!".charAt(random.nextInt(3)) + expression(random, depth - 1);
+            case 4: return "(int) " + expression(random, depth - 1);
+            default:
+                return expression(random, depth - 1) + " " + BINARY[random.nextInt(BINARY.length)]
+                        + " " + expression(random, depth - 1);
+        }
+    }
+
+    /**
+     * Recursive descent over <code>int x = expression;</code>, one rule per
+     * level from logical or down to multiplicative. Binary operators are
+     * left associative, and the operands of multiplicative operators are
+     * cast expressions.
+     */
+    private static class Reference {
+        private final TokenStream tokens;
+        private int index;
+
+        Reference(TokenStream tokens) {
+            this.tokens = tokens;
+        }
+
+        StmtNode.Declaration parseDeclaration() {
+            Vector<Token> specs = new Vector<>();
+            specs.add(tokens.get(expect(TokenType.INT)));
+            Vector<DeclNode> decls = new Vector<>();
+            decls.add(new DeclNode.Identifier(tokens.get(expect(TokenType.IDENTIFIER))));
+            expect(TokenType.ASSIGN);
+            Vector<ExprNode> inits = new Vector<>();
+            inits.add(parseLogicalOr());
+            expect(TokenType.SEMICOLON);
+            return new StmtNode.Declaration(new DeclNode.Root(specs, decls, inits), null);
+        }
+
+        private ExprNode parseLogicalOr() {
+            ExprNode node = parseLogicalAnd();
+            while(accept(TokenType.REL_OR))
+                node = new ExprNode.LogicalOr(node, parseLogicalAnd());
+            return node;
+        }
+
+        private ExprNode parseLogicalAnd() {
+            ExprNode node = parseBitOR();
+            while(accept(TokenType.REL_AND))
+                node = new ExprNode.LogicalAnd(node, parseBitOR());
+            return node;
+        }
+
+        private ExprNode parseBitOR() {
+            ExprNode node = parseBitXOR();
+            while(accept(TokenType.OR))
+                node = new ExprNode.BitOR(node, parseBitXOR());
+            return node;
+        }
+
+        private ExprNode parseBitXOR() {
+            ExprNode node = parseBitAnd();
+            while(accept(TokenType.XOR))
+                node = new ExprNode.BitXOR(node, parseBitAnd());
+            return node;
+        }
+
+        private ExprNode parseBitAnd() {
+            ExprNode node = parseEquality();
+            while(accept(TokenType.AND))
+                node = new ExprNode.BitAnd(node, parseEquality());
+            return node;
+        }
+
+        private ExprNode parseEquality() {
+            ExprNode node = parseRelational();
+            while(true) {
+                if(accept(TokenType.EQUAL))
+                    node = new ExprNode.Equality(node, parseRelational());
+                else if(accept(TokenType.NOT_EQUAL))
+                    node = new ExprNode.Inequality(node, parseRelational());
+                else
+                    return node;
+            }
+        }
+
+        private ExprNode parseRelational() {
+            ExprNode node = parseShift();
+            while(true) {
+                if(accept(TokenType.GREATER))
+                    node = new ExprNode.Greater(node, parseShift());
+                else if(accept(TokenType.GREATER_EQUAL))
+                    node = new ExprNode.GreaterEqual(node, parseShift());
+                else if(accept(TokenType.LESS))
+                    node = new ExprNode.Less(node, parseShift());
+                else if(accept(TokenType.LESS_EQUAL))
+                    node = new ExprNode.LessEqual(node, parseShift());
+                else
+                    return node;
+            }
+        }
+
+        private ExprNode parseShift() {
+            ExprNode node = parseAdditive();
+            while(true) {
+                if(accept(TokenType.LEFT_SHIFT))
+                    node = new ExprNode.LShift(node, parseAdditive());
+                else if(accept(TokenType.RIGHT_SHIFT))
+                    node = new ExprNode.Rshift(node, parseAdditive());
+                else
+                    return node;
+            }
+        }
+
+        private ExprNode parseAdditive() {
+            ExprNode node = parseMultiplicative();
+            while(true) {
+                if(accept(TokenType.ADD))
+                    node = new ExprNode.Add(node, parseMultiplicative());
+                else if(accept(TokenType.SUB))
+                    node = new ExprNode.Minus(node, parseMultiplicative());
+                else
+                    return node;
+            }
+        }
+
+        private ExprNode parseMultiplicative() {
+            ExprNode node = parseCast();
+            while(true) {
+                if(accept(TokenType.MULTI))
+                    node = new ExprNode.Multi(node, parseCast());
+                else if(accept(TokenType.DIV))
+                    node = new ExprNode.Div(node, parseCast());
+                else if(accept(TokenType.MOD))
+                    node = new ExprNode.Mod(node, parseCast());
+                else
+                    return node;
+            }
+        }
+
+        private ExprNode parseCast() {
+            if(tokens.type(index) == TokenType.LEFT_PAREN && tokens.type(index + 1) == TokenType.INT) {
+                Vector<Token> types = new Vector<>();
+                types.add(tokens.get(index + 1));
+                index += 2;
+                expect(TokenType.RIGHT_PAREN);
+                return new ExprNode.Cast(types, parseCast());
+            }
+            return parseUnary();
+        }
+
+        private ExprNode parseUnary() {
+            if(accept(TokenType.REL_NOT))
+                return new ExprNode.LogicalNot(parseCast());
+            if(accept(TokenType.ADD))
+                return new ExprNode.UnaryPlus(parseCast());
+            if(accept(TokenType.SUB))
+                return new ExprNode.UnaryMinus(parseCast());
+            return parsePrimary();
+        }
+
+        private ExprNode parsePrimary() {
+            if(tokens.type(index) == TokenType.IDENTIFIER) {
+                index += 1;
+                return new ExprNode.Identifier(tokens.value(index - 1), tokens.symbol(index - 1));
+            }
+            if(tokens.type(index) == TokenType.INTEGER_CONSTANT) {
+                index += 1;
+                return new ExprNode.Number(tokens.integer(index - 1));
+            }
+            expect(TokenType.LEFT_PAREN);
+            ExprNode node = parseLogicalOr();
+            expect(TokenType.RIGHT_PAREN);
+            return node;
+        }
+
+        private boolean accept(TokenType type) {
+            if(index < tokens.size() && tokens.type(index) == type) {
+                index += 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the index of the token of given type at the current one.
+         */
+        private int expect(TokenType type) {
+            if(!accept(type))
+                throw new IllegalStateException("expect " + type + " at token " + index);
+            return index - 1;
+        }
+    }
+}
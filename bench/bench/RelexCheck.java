@@ -0,0 +1,125 @@
+package bench;
+
+import lexer.Lexer;
+import lexer.LineMap;
+import lexer.SourceBuffer;
+import lexer.SymbolTable;
+import lexer.TokenEdit;
+import lexer.TokenStream;
+
+import java.util.Random;
+
+/**
+ * Edit generated sources at random, and check that re-lexing after each
+ * edit gives the same tokens and line starts as scanning the edited source
+ * from scratch, and that the tokens outside the reported edit are the old
+ * ones, shifted. Exits with status 1 on the first failure.
+ *
+ * USAGE: RelexCheck [-sources n] [-edits n]
+ */
+public class RelexCheck {
+
+    // Literals and comments opened and closed at random, so that edits
+    // change what the text after them is.
+    private static final String[] INSERTS = {
+            "", "x", "\n", "\r\n", " ", ";", "{", "}", "/*", "*/", "//", "/", "*", "\"", "'", "\\",
+            "1", "2.5", ".", "99999999999999999999", "int", "else", "a = 'c';", "\"s\\\"\"", "\n/* x\n */\n"
+    };
+
+    public static void main(String[] args) {
+        int sources = 100;
+        int edits = 30;
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-sources": sources = Integer.parseInt(args[i+1]); break;
+                case "-edits": edits = Integer.parseInt(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        SourceGenerator.Shape[] shapes = SourceGenerator.Shape.values();
+        int steps = 0;
+        for(int n=0; n<sources; ++n) {
+            Random random = new Random(n);
+            String source = SourceGenerator.generate(shapes[n % shapes.length], 1024);
+            SymbolTable symbols = new SymbolTable();
+            TokenStream tokens = new Lexer(new SourceBuffer(source), symbols).scanAll();
+            for(int i=0; i<edits; ++i) {
+                int offset = random.nextInt(source.length() + 1);
+                int removed = Math.min(random.nextInt(8), source.length() - offset);
+                String inserted = INSERTS[random.nextInt(INSERTS.length)];
+                String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+
+                Lexer lexer = new Lexer(new SourceBuffer(edited), symbols);
+                TokenStream relexed = lexer.relex(tokens, offset, removed, inserted);
+                TokenStream full = new Lexer(new SourceBuffer(edited), symbols).scanAll();
+                String error = compare(relexed, full);
+                if(error == null)
+                    error = compareEdit(tokens, relexed, lexer.getLastEdit(), inserted.length() - removed);
+                if(error != null)
+                    fail("source " + n + ", edit " + i + " at " + offset + ": " + error);
+
+                source = edited;
+                tokens = relexed;
+                steps += 1;
+            }
+        }
+        System.out.println(steps + " edits re-lexed, all the same as a full scan.");
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+
+    /**
+     * @return the first difference, null if there is none.
+     */
+    private static String compare(TokenStream relexed, TokenStream full) {
+        if(relexed.size() != full.size())
+            return relexed.size() + " tokens instead of " + full.size();
+        for(int i=0; i<full.size(); ++i) {
+            if(relexed.type(i) != full.type(i) || relexed.start(i) != full.start(i)
+                    || relexed.length(i) != full.length(i) || relexed.valid(i) != full.valid(i)
+                    || relexed.integer(i) != full.integer(i) || !relexed.value(i).equals(full.value(i)))
+                return "token " + i + " is " + relexed.value(i) + " instead of " + full.value(i);
+            if(relexed.line(i) != full.line(i) || relexed.column(i) != full.column(i))
+                return "token " + i + " is at " + relexed.line(i) + ":" + relexed.column(i)
+                        + " instead of " + full.line(i) + ":" + full.column(i);
+        }
+        LineMap lines = relexed.getLineMap();
+        LineMap full_lines = full.getLineMap();
+        if(lines.count() != full_lines.count())
+            return lines.count() + " lines instead of " + full_lines.count();
+        for(int line=1; line<=full_lines.count(); ++line) {
+            if(lines.start(line) != full_lines.start(line))
+                return "line " + line + " starts at " + lines.start(line) + " instead of " + full_lines.start(line);
+        }
+        return null;
+    }
+
+    /**
+     * Check that the tokens before the edit are the old ones, and that
+     * those after it are the old ones shifted by delta characters.
+     * @return what is wrong, null if nothing.
+     */
+    private static String compareEdit(TokenStream previous, TokenStream tokens, TokenEdit edit, int delta) {
+        if(edit == null)
+            return "no edit";
+        if(edit.begin < 0 || edit.begin > edit.new_end || edit.new_end > tokens.size()
+                || edit.old_end > previous.size() || tokens.size() - edit.new_end != previous.size() - edit.old_end)
+            return "edit " + edit.begin + ", " + edit.old_end + ", " + edit.new_end + " out of range";
+        for(int i=0; i<edit.begin; ++i) {
+            if(tokens.type(i) != previous.type(i) || tokens.start(i) != previous.start(i))
+                return "token " + i + " before the edit changed";
+        }
+        for(int i=edit.new_end; i<tokens.size(); ++i) {
+            int old = i - edit.shift();
+            if(tokens.type(i) != previous.type(old) || tokens.start(i) != previous.start(old) + delta)
+                return "token " + i + " after the edit is not token " + old + " shifted";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package bench;
+
+import ast.StmtNode;
+import ast.XMLPrinter;
+import error.CompilerError;
+import error.ErrorCollector;
+import lexer.Lexer;
+import lexer.SourceBuffer;
+import lexer.SymbolTable;
+import lexer.Token;
+import lexer.TokenStream;
+import parser.Parser;
+
+import java.util.Random;
+
+/**
+ * Edit generated sources at random, and check that re-lexing and
+ * re-parsing after each edit gives the same tree, token positions and
+ * errors as parsing the edited source from scratch. Every other source
+ * is re-parsed with memoization. Exits with status 1
+ * on the first failure, an exception included.
+ *
+ * USAGE: ReparseCheck [-sources n] [-edits n]
+ */
+public class ReparseCheck {
+
+    private static final String[] INSERTS = {
+            "", "x", "\n", ";", "}", "{", "(", ")", " ", "+", "=", "/*", "*/", "int",
+            "int q;", "a = 1;", "\nint z(int a) { return a; }\n", "if (a) ", "else "
+    };
+
+    public static void main(String[] args) {
+        int sources = 200;
+        int edits = 40;
+        for(int i=0; i+1<args.length; i+=2) {
+            switch (args[i]) {
+                case "-sources": sources = Integer.parseInt(args[i+1]); break;
+                case "-edits": edits = Integer.parseInt(args[i+1]); break;
+                default:
+                    System.out.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        // An error before an edit that is re-parsed must be reported once.
+        String fixed = "int a = 1;\nint b = ;\nint c = 3;\nint d = 4;\n";
+        String error = check(fixed, fixed.indexOf('3'), 1, "42");
+        if(error != null)
+            fail("fixed edit: " + error);
+
+        SourceGenerator.Shape[] shapes = {SourceGenerator.Shape.FUNCTIONS, SourceGenerator.Shape.COMMENTED};
+        int steps = 0;
+        for(int n=0; n<sources; ++n) {
+            Random random = new Random(n);
+            String source = SourceGenerator.generate(shapes[n % shapes.length], 2048);
+            Session session = new Session(source, n % 2 == 1);
+            for(int i=0; i<edits && session.tree != null; ++i) {
+                int offset = random.nextInt(source.length() + 1);
+                int removed = Math.min(random.nextInt(8), source.length() - offset);
+                String inserted = INSERTS[random.nextInt(INSERTS.length)];
+                error = session.edit(offset, removed, inserted);
+                if(error != null)
+                    fail("source " + n + ", edit " + i + ": " + error);
+                source = session.source;
+                steps += 1;
+            }
+        }
+        System.out.println(steps + " edits re-parsed, all the same as a full parse.");
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+
+    /**
+     * Check a single edit of a source.
+     * @return what went wrong, null if nothing.
+     */
+    private static String check(String source, int offset, int removed, String inserted) {
+        return new Session(source, false).edit(offset, removed, inserted);
+    }
+
+    /**
+     * A source with its tokens and tree, edited in place.
+     */
+    private static class Session {
+        String source;
+        final boolean memoize;
+        final SymbolTable symbols = new SymbolTable();
+        TokenStream tokens;
+        StmtNode.CompilationUnit tree;
+
+        Session(String source, boolean memoize) {
+            this.source = source;
+            this.memoize = memoize;
+            this.tokens = new Lexer(new SourceBuffer(source), symbols).scanAll();
+            Parser parser = new Parser(tokens, new ErrorCollector());
+            parser.setMemoize(memoize);
+            this.tree = parser.parse();
+        }
+
+        String edit(int offset, int removed, String inserted) {
+            String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+
+            Lexer lexer = new Lexer(new SourceBuffer(edited), symbols);
+            TokenStream relexed = lexer.relex(tokens, offset, removed, inserted);
+            ErrorCollector errors = new ErrorCollector();
+            Parser parser = new Parser(relexed, errors);
+            parser.setMemoize(memoize);
+            StmtNode.CompilationUnit reparsed = parser.reparse(tree, lexer.getLastEdit());
+
+            TokenStream full_tokens = new Lexer(new SourceBuffer(edited), symbols).scanAll();
+            ErrorCollector full_errors = new ErrorCollector();
+            StmtNode.CompilationUnit full = new Parser(full_tokens, full_errors).parse();
+
+            if(!describe(errors).equals(describe(full_errors)))
+                return "errors differ:\n" + describe(errors) + "instead of\n" + describe(full_errors);
+            if(!describe(reparsed).equals(describe(full)))
+                return "trees differ";
+
+            source = edited;
+            tokens = relexed;
+            tree = reparsed;
+            return null;
+        }
+    }
+
+    private static String describe(ErrorCollector errors) {
+        StringBuilder builder = new StringBuilder();
+        for(CompilerError error : errors.getErrors())
+            builder.append(error.getDescription()).append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * The tree in xml, with the position of every token the declarations
+     * hold.
+     */
+    private static String describe(StmtNode.CompilationUnit tree) {
+        if(tree == null)
+            return "null";
+        StringBuilder builder = new StringBuilder();
+        for(StmtNode.Declaration declaration : tree.getNodes()) {
+            builder.append(declaration.getBegin()).append('-').append(declaration.getEnd()).append(':');
+            if(declaration.getTokens() != null) {
+                for(Token token : declaration.getTokens()) {
+                    builder.append(' ').append(token.number).append('/').append(token.line)
+                            .append('/').append(token.offset).append('/').append(token.column);
+                }
+            }
+            builder.append('\n');
+        }
+        // Nodes without an xml form of their own print their identity hash.
+        return builder + new XMLPrinter().print(tree).replaceAll("@[0-9a-f]+", "");
+    }
+}
@@ -0,0 +1,194 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generate zqc sources of a given shape and approximate size.
+ */
+public class SourceGenerator {
+
+    public enum Shape {
+        FUNCTIONS,      // many small functions with statements of every kind.
+        EXPRESSIONS,    // few functions with long flat expressions.
+        NESTED,         // deeply nested blocks and parenthesized expressions.
+        COMMENTED       // small functions interleaved with comments.
+    }
+
+    public static String generate(Shape shape, int size) {
+        StringBuilder builder = new StringBuilder(size + 1024);
+        int i = 0;
+        while(builder.length() < size) {
+            switch (shape) {
+                case FUNCTIONS: function(builder, i); break;
+                case EXPRESSIONS: expression(builder, i); break;
+                case NESTED: nested(builder, i); break;
+                case COMMENTED: commented(builder, i); break;
+            }
+            i += 1;
+        }
+        return builder.toString();
+    }
+
+    private static void function(StringBuilder builder, int i) {
+        builder.append("int fn").append(i).append("(int a, double b)\n{\n");
+        builder.append("    int x = a * ").append(i).append(" + (b - ").append(i).append(") / 3;\n");
+        builder.append("    int v[10];\n");
+        builder.append("    while(x > 0) { x -= 1; if(x == ").append(i % 7)
+                .append(") { break; } else x = x << 1; }\n");
+        builder.append("    v[x % 10] = 'c';\n");
+        builder.append("    trace(\"fn").append(i).append("\");\n");
+        builder.append("    return ").append(i == 0 ? "x" : "fn" + (i - 1) + "(x, b)").append(";\n}\n");
+    }
+
+    private static void expression(StringBuilder builder, int i) {
+        builder.append("double ex").append(i).append("(double a, double b)\n{\n");
+        for(int line=0; line<8; ++line) {
+            builder.append("    a = ");
+            for(int term=0; term<32; ++term) {
+                if(term > 0)
+                    builder.append(term % 3 == 0 ? " + " : term % 3 == 1 ? " * " : " - ");
+                builder.append(term % 2 == 0 ? "a" : "b").append(" * ").append(term).append(".5");
+            }
+            builder.append(";\n");
+        }
+        builder.append("    return a;\n}\n");
+    }
+
+    private static void nested(StringBuilder builder, int i) {
+        int depth = 24;
+        builder.append("int ne").append(i).append("(int a)\n{\n");
+        for(int d=0; d<depth; ++d) {
+            indent(builder, d + 1);
+            builder.append("if(a > ").append(d).append(") {\n");
+        }
+        indent(builder, depth + 1);
+        builder.append("a = ");
+        for(int d=0; d<depth; ++d)
+            builder.append("(a + ");
+        builder.append('1');
+        for(int d=0; d<depth; ++d)
+            builder.append(')');
+        builder.append(";\n");
+        for(int d=depth-1; d>=0; --d) {
+            indent(builder, d + 1);
+            builder.append("}\n");
+        }
+        builder.append("    return a;\n}\n");
+    }
+
+    private static void commented(StringBuilder builder, int i) {
+        builder.append("/*\n * Function ").append(i).append(".\n * Returns its argument.\n */\n");
+        builder.append("int co").append(i).append("(int a)\n{\n");
+        builder.append("    // Nothing to do here.\n");
+        builder.append("    return a; // the argument\n}\n");
+    }
+
+    // region Random programs
+
+    private static final String[] BINARY = {
+            "+", "-", "*", "/", "%", "<<", ">>", "<", ">", "<=", ">=", "==", "!=", "&", "^", "|", "&&", "||"
+    };
+    private static final String[] ASSIGN = {"=", "+=", "-=", "*=", "/="};
+    private static final String[] TYPES = {"int", "double", "char", "void"};
+    private static final String[] BROKEN = {"(", ")", "{", "}", "[", "]", ";", "=", "+", "int", "else", ","};
+
+    /**
+     * A few random declarations, with statements and expressions of every
+     * kind nested a few levels deep.
+     */
+    public static String program(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int count = 1 + random.nextInt(4);
+        for(int i=0; i<count; ++i) {
+            if(random.nextBoolean()) {
+                builder.append("int f").append(i).append("(int a, char b[2]) { ")
+                        .append(statement(random, 3)).append(' ').append(statement(random, 3)).append(" }\n");
+            } else {
+                builder.append(TYPES[random.nextInt(TYPES.length)]).append(" g").append(i);
+                if(random.nextBoolean())
+                    builder.append(" = ").append(expression(random, 2));
+                builder.append(";\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Break a program by removing, inserting or swapping a few of its
+     * space separated words.
+     */
+    public static String mutate(Random random, String program) {
+        List<String> words = new ArrayList<>(Arrays.asList(program.split(" ")));
+        int count = random.nextInt(3);
+        for(int i=0; i<count && words.size() > 1; ++i) {
+            int at = random.nextInt(words.size());
+            switch (random.nextInt(3)) {
+                case 0: words.remove(at); break;
+                case 1: words.add(at, BROKEN[random.nextInt(BROKEN.length)]); break;
+                default: Collections.swap(words, at, random.nextInt(words.size()));
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    private static String statement(Random random, int depth) {
+        switch (random.nextInt(depth <= 0 ? 5 : 10)) {
+            case 0: return expression(random, 3) + ";";
+            case 1: return "return " + (random.nextBoolean() ? expression(random, 2) : "") + ";";
+            case 2: return random.nextBoolean() ? "break;" : "continue;";
+            case 3: return ";";
+            case 4: return TYPES[random.nextInt(TYPES.length)] + " v"
+                    + (random.nextBoolean() ? " = " + expression(random, 2) : "")
+                    + (random.nextBoolean() ? ", w[3]" : "") + ";";
+            case 5: case 6: return "if (" + expression(random, 2) + ") " + statement(random, depth - 1)
+                    + (random.nextBoolean() ? " else " + statement(random, depth - 1) : "");
+            case 7: return "while (" + expression(random, 2) + ") " + statement(random, depth - 1);
+            default: {
+                StringBuilder builder = new StringBuilder("{ ");
+                int count = random.nextInt(4);
+                for(int i=0; i<count; ++i)
+                    builder.append(statement(random, depth - 1)).append('\n');
+                return builder.append('}').toString();
+            }
+        }
+    }
+
+    private static String expression(Random random, int depth) {
+        switch (random.nextInt(depth <= 0 ? 4 : 13)) {
+            case 0: return "a";
+            case 1: return Integer.toString(random.nextInt(100));
+            case 2: return "\"s\"";
+            case 3: return "'c'";
+            case 4: return expression(random, depth - 1) + " " + BINARY[random.nextInt(BINARY.length)]
+                    + " " + expression(random, depth - 1);
+            case 5: return "(" + expression(random, depth - 1) + ")";
+            case 6: return "-+!".charAt(random.nextInt(3)) + expression(random, depth - 1);
+            case 7: return "(" + TYPES[random.nextInt(TYPES.length)] + ")" + expression(random, depth - 1);
+            case 8: return expression(random, depth - 1) + "[" + expression(random, depth - 1) + "]";
+            case 9: {
+                StringBuilder builder = new StringBuilder(expression(random, depth - 1)).append('(');
+                int count = random.nextInt(3);
+                for(int i=0; i<count; ++i) {
+                    if(i > 0)
+                        builder.append(", ");
+                    builder.append(expression(random, depth - 1));
+                }
+                return builder.append(')').toString();
+            }
+            case 10: case 11: return expression(random, depth - 1) + " " + ASSIGN[random.nextInt(ASSIGN.length)]
+                    + " " + expression(random, depth - 1);
+            default: return "x" + random.nextInt(3);
+        }
+    }
+
+    // endregion
+
+    private static void indent(StringBuilder builder, int depth) {
+        for(int d=0; d<depth; ++d)
+            builder.append("    ");
+    }
+}
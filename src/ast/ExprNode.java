@@ -60,9 +60,11 @@ public abstract class ExprNode extends Node{
 
     public static class Identifier extends ExprNode {
         String identifier;
+        int symbol;
 
-        public Identifier(String identifier) {
+        public Identifier(String identifier, int symbol) {
             this.identifier = identifier;
+            this.symbol = symbol;
         }
 
         public <R> R accept(ExprNode.Visitor<R> visitor) {
@@ -71,8 +73,16 @@ public abstract class ExprNode extends Node{
     }
 
     public static class Number extends ExprNode {
+        boolean integral;   // integer and character constants.
+        long integer;
         double number;
 
+        public Number(long integer) {
+            this.integral = true;
+            this.integer = integer;
+            this.number = integer;
+        }
+
         public Number(double number) {
             this.number = number;
         }
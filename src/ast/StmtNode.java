@@ -1,5 +1,7 @@
 package ast;
 
+import lexer.Token;
+
 import java.util.Vector;
 
 public abstract class StmtNode extends Node{
@@ -26,6 +28,10 @@ public abstract class StmtNode extends Node{
             this.nodes = nodes;
         }
 
+        public Vector<Declaration> getNodes() {
+            return nodes;
+        }
+
         public <R> R accept(StmtNode.Visitor<R> visitor) {
             return visitor.visitCompilationUnit(this);
         }
@@ -35,11 +41,36 @@ public abstract class StmtNode extends Node{
         DeclNode.Root decl;
         StmtNode.Compound body;
 
+        // Tokens [begin, end) an external declaration was parsed from without
+        // errors, and the token objects its subtree holds. begin is -1 for
+        // other declarations.
+        int begin = -1;
+        int end = -1;
+        Vector<Token> tokens;
+
         public Declaration(DeclNode.Root decl, StmtNode.Compound body) {
             this.decl = decl;
             this.body = body;
         }
 
+        public void setSource(int begin, int end, Vector<Token> tokens) {
+            this.begin = begin;
+            this.end = end;
+            this.tokens = tokens;
+        }
+
+        public int getBegin() {
+            return begin;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public Vector<Token> getTokens() {
+            return tokens;
+        }
+
         public <R> R accept(StmtNode.Visitor<R> visitor) {
             return visitor.visitDeclaration(this);
         }
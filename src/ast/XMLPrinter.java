@@ -16,6 +16,21 @@ public class XMLPrinter implements StmtNode.Visitor<String>,
         return this.visit(node);
     }
 
+    /**
+     * Print a compilation unit piece by piece: its opening tag, then each
+     * declaration with <code>print</code>, then its closing tag.
+     */
+    public String printBegin() {
+        String text = indentString(depth) + "<compilation-unit>\n";
+        depth += 1;
+        return text;
+    }
+
+    public String printEnd() {
+        depth -= 1;
+        return indentString(depth) + "</compilation-unit>\n";
+    }
+
     // endregion
 
     // region Utils
@@ -58,7 +73,7 @@ public class XMLPrinter implements StmtNode.Visitor<String>,
         depth += 1;
         for(Token token : node.specs) {
             append(builder, "<specifiers>", depth);
-            builder.append(token.value);
+            builder.append(token.getValue());
             builder.append("</specifiers>\n");
         }
         depth -= 1;
@@ -140,7 +155,7 @@ public class XMLPrinter implements StmtNode.Visitor<String>,
     public String visitIdentifier(DeclNode.Identifier node) {
         StringBuilder builder = new StringBuilder();
         append(builder, "<decl-identifier>", depth);
-        builder.append(node.identifier.value);
+        builder.append(node.identifier.getValue());
         builder.append("</decl-identifier>\n");
         return builder.toString();
     }
@@ -164,7 +179,10 @@ public class XMLPrinter implements StmtNode.Visitor<String>,
         StringBuilder builder = new StringBuilder();
         builder.append(indentString(depth));
         builder.append("<expr-number>");
-        builder.append(expr.number);
+        if(expr.integral)
+            builder.append(expr.integer);
+        else
+            builder.append(expr.number);
         builder.append("</expr-number>\n");
         return builder.toString();
     }
@@ -900,15 +918,11 @@ public class XMLPrinter implements StmtNode.Visitor<String>,
     @Override
     public String visitCompilationUnit(StmtNode.CompilationUnit node) {
         StringBuilder builder = new StringBuilder();
-        builder.append(indentString(depth));
-        builder.append("<compilation-unit>\n");
-        depth += 1;
+        builder.append(printBegin());
         for(StmtNode.Declaration child : node.nodes) {
             builder.append(this.visit(child));
         }
-        depth -= 1;
-        builder.append(indentString(depth));
-        builder.append("</compilation-unit>\n");
+        builder.append(printEnd());
         return builder.toString();
     }
 
@@ -1,9 +1,26 @@
 package error;
 
 
+/**
+ * An error in the compiled source. It is a diagnostic rather than a
+ * failure of the compiler, so no stack trace is recorded.
+ */
 public class CompilerError extends Exception {
-    public String description;
+    protected String description;
     public CompilerError(String description) {
+        super(null, null, false, false);
         this.description = description;
     }
+
+    /**
+     * Get the text shown to the user.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getMessage() {
+        return getDescription();
+    }
 }
@@ -1,5 +1,6 @@
 package error;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
 
@@ -11,7 +12,12 @@ public class ErrorCollector {
     // region singleton pattern
     private static ErrorCollector instance = new ErrorCollector();
 
-    private ErrorCollector(){}
+    /**
+     * A collector of its own, e.g. for one of several parsers running at
+     * the same time. Its errors are usually added to the shared instance
+     * afterwards.
+     */
+    public ErrorCollector(){}
 
     public static ErrorCollector getInstance(){
         return instance;
@@ -26,15 +32,30 @@ public class ErrorCollector {
         return !errors.isEmpty();
     }
 
+    public int getErrorCount() {
+        return errors.size();
+    }
+
+    public List<CompilerError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
     public void add(CompilerError e) {
         errors.add(e);
     }
 
+    /**
+     * Add all the errors of another collector, in their order.
+     */
+    public void addAll(ErrorCollector other) {
+        errors.addAll(other.errors);
+    }
+
     public void show() {
         String bold_color = "\033[1m";
         for(CompilerError error : errors) {
             String msg = bold_color + file_name + ":" +
-                    error.description;
+                    error.getDescription();
             System.out.println(msg);
         }
         System.out.println(errors.size() + " errors generated.");
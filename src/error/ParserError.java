@@ -1,8 +1,8 @@
 package error;
 
-import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
 
-import java.util.List;
 import static error.TextColor.*;
 
 public class ParserError extends CompilerError {
@@ -12,18 +12,80 @@ public class ParserError extends CompilerError {
 
     public int parsed_amount;    // position of error, index of error token.
 
-    public ParserError(int parsed, String msg, List<Token> tokens, ErrorType type) {
+    private final String msg;
+    private final TokenType[] expected;     // for "expect ...", when msg is null.
+    private final TokenStream tokens;
+    private final ErrorType type;
+
+    /**
+     * Most parser errors are thrown away while trying alternatives, so
+     * only the position is kept here. The description is built by
+     * <code>getDescription</code> when the error is shown.
+     */
+    public ParserError(int parsed, String msg, TokenStream tokens, ErrorType type) {
         super(null);
 
         if(type == ErrorType.BEFORE)
             this.parsed_amount = parsed;
         else
             this.parsed_amount = parsed-1;
+        this.msg = msg;
+        this.expected = null;
+        this.tokens = tokens;
+        this.type = type;
+    }
 
-        Token token = tokens.get(parsed_amount);
+    /**
+     * An error for a token that is not one of the expected types. Failed
+     * matches are the most common errors, so even the message is only
+     * built when the error is shown.
+     */
+    public ParserError(int parsed, TokenType[] expected, TokenStream tokens, ErrorType type) {
+        super(null);
+
+        if(type == ErrorType.BEFORE)
+            this.parsed_amount = parsed;
+        else
+            this.parsed_amount = parsed-1;
+        this.msg = null;
+        this.expected = expected;
+        this.tokens = tokens;
+        this.type = type;
+    }
+
+    /**
+     * Get the index of the token the error is about, the one after the
+     * error position for <code>AFTER</code>. It may be the size of the
+     * tokens, at the end of input.
+     */
+    public int getIndex() {
+        return type == ErrorType.AFTER ? parsed_amount + 1 : parsed_amount;
+    }
+
+    /**
+     * Get the token types a failed match expected, null for other errors.
+     */
+    public TokenType[] getExpected() {
+        return expected;
+    }
+
+    @Override
+    public String getDescription() {
+        if(description == null)
+            description = render();
+        return description;
+    }
+
+    private String render() {
+        // An error at or past the end of input has no token of its own, it
+        // is shown after the last token.
+        boolean at_end = parsed_amount >= tokens.size();
+        int index = Math.max(0, Math.min(parsed_amount, tokens.size() - 1));
+        ErrorType where = at_end ? ErrorType.AFTER : type;
+        int token_line = tokens.size() == 0 ? 1 : tokens.line(index);
 
         StringBuilder builder = new StringBuilder();
-        builder.append(token.line);
+        builder.append(token_line);
         if(!is_windows) {
             builder.append(bold_color);
             builder.append(red_color);
@@ -33,46 +95,94 @@ public class ParserError extends CompilerError {
             builder.append(reset_color);
             builder.append(bold_color);
         }
-        builder.append(msg);
-        switch (type) {
-            case AT:
-                builder.append(" at ");
-                break;
-            case AFTER:
-                builder.append(" after ");
-                break;
-            case BEFORE:
-                builder.append(" before ");
-                break;
+        if(msg != null)
+            builder.append(msg);
+        else
+            appendExpected(builder);
+        if(at_end) {
+            builder.append(" at end of input");
+            if(tokens.size() == 0)
+                return builder.toString();
+        } else {
+            switch (type) {
+                case AT:
+                    builder.append(" at ");
+                    break;
+                case AFTER:
+                    builder.append(" after ");
+                    break;
+                case BEFORE:
+                    builder.append(" before ");
+                    break;
+            }
+            builder.append(tokens.value(index));
         }
-        builder.append(token.value);
 
         builder.append("\n    ");
 
-        // TODO: get source line from lexer.
+        String source_line = tokens.sourceLine(token_line);
+        if(source_line != null)
+            appendSourceLine(builder, source_line, index, where);
+        else
+            appendTokenLine(builder, token_line, index, where);
+
+        if(is_windows)
+            builder.append("^");
+        else
+            builder.append(green_color + "^" + reset_color);
+
+        return builder.toString();
+    }
+
+    private void appendExpected(StringBuilder builder) {
+        builder.append("expect ");
+        for(int i = 0; i<expected.length; ++i) {
+            if(i != 0)
+                builder.append(" || ");
+            String spelling = expected[i].spelling;
+            if(spelling != null && !spelling.isEmpty())
+                builder.append("'" + spelling + "'");
+            else
+                builder.append(expected[i].toString().toLowerCase());
+        }
+    }
+
+    /**
+     * Show the real source line, and put the caret under the error token,
+     * or right after it.
+     */
+    private void appendSourceLine(StringBuilder builder, String source_line, int index, ErrorType where) {
+        builder.append(source_line).append("\n    ");
+
+        int line_start = tokens.start(index) - tokens.column(index) + 1;
+        int caret = tokens.start(index);
+        if(where == ErrorType.AFTER)
+            caret += tokens.length(index);
+        String before = tokens.text(line_start, caret);
+        for(int i=0; i<before.length(); ++i)
+            builder.append(before.charAt(i) == '\t' ? '\t' : ' ');
+    }
+
+    /**
+     * Without the source, rebuild the line from its tokens.
+     */
+    private void appendTokenLine(StringBuilder builder, int token_line, int index, ErrorType where) {
         StringBuilder line = new StringBuilder();
-        int left = parsed_amount;
-        while(left >= 0 && tokens.get(left).line == token.line) left -= 1;
+        int left = index;
+        while(left >= 0 && tokens.line(left) == token_line) left -= 1;
         left += 1;
-        int right = parsed_amount;
+        int right = index;
         int col = 0;
         for(int i=left; i<=right; i++) {
-            line.append(tokens.get(i).value).append(" ");
-            if(i <= parsed_amount)
-                col += tokens.get(i).value.length()+1;
+            line.append(tokens.value(i)).append(" ");
+            if(i <= index)
+                col += tokens.value(i).length()+1;
         }
         builder.append(line.toString()).append("\n");
         for(int i=0; i<col+2; ++i)
             builder.append(" ");
-        if(type == ErrorType.AFTER)
+        if(where == ErrorType.AFTER)
             builder.append(" ");
-
-        if(is_windows)
-            builder.append("^");
-        else
-            builder.append(green_color + "^" + reset_color);
-
-        this.description = builder.toString();
     }
 
 }
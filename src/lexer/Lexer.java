@@ -1,7 +1,7 @@
 package lexer;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import static lexer.TokenType.*;
 
@@ -10,82 +10,363 @@ public class Lexer {
     private SourceBuffer source;
     private int line;  // current line number
     private int start; // beginning index of the token.
+    private int end;   // end index(exclusive) of the token.
+    private boolean valid;
+    private long payload;   // symbol id of an identifier, or value of a constant.
+    private int count;  // number of tokens scanned, used to number them.
+    private int line_start; // offset where current line begins.
+    private int open_comment = -1;  // start of an unterminated block comment not reported yet.
+    private int comment_line;       // line and line start where it begins.
+    private int comment_line_start;
+    private boolean unterminated;   // whether the source ended inside a block comment.
+    private boolean opening;        // whether the last token is its opening.
 
-    private static final Map<String, TokenType> keywords;
-    private static final Map<String, TokenType> data_types;
+    private LineMap line_map;   // null if the source is not retained.
+    private TokenEdit last_edit;    // tokens changed by the last relex.
+
+    private SymbolTable symbols;
+
+    // Character classes of ASCII characters.
+    private static final byte OTHER        = 0;
+    private static final byte SPACE        = 1;
+    private static final byte NEWLINE      = 2;
+    private static final byte LETTER       = 3;
+    private static final byte DIGIT        = 4;
+    private static final byte QUOTE        = 5;
+    private static final byte DOUBLE_QUOTE = 6;
+    private static final byte OPERATOR     = 7;
+    private static final byte END          = 8;
+
+    private static final byte[] char_class = new byte[128];
+    private static final boolean[] identifier_part = new boolean[128];
+
+    // Transition table of operators: the token of the character alone,
+    // followed by '=' and followed by itself.
+    private static final TokenType[] single = new TokenType[128];
+    private static final TokenType[] with_assign = new TokenType[128];
+    private static final TokenType[] doubled = new TokenType[128];
+
+    // Powers of ten that are exact doubles.
+    private static final double[] powers_of_ten = new double[23];
 
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("if",     IF);
-        keywords.put("else",   ELSE);
-        keywords.put("print",  PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("while",  WHILE);
+        powers_of_ten[0] = 1;
+        for(int i=1; i<powers_of_ten.length; ++i)
+            powers_of_ten[i] = powers_of_ten[i-1] * 10;
+
+        char_class['\0'] = END;
+        char_class[' ']  = SPACE;
+        char_class['\t'] = SPACE;
+        char_class['\n'] = NEWLINE;
+        char_class['\''] = QUOTE;
+        char_class['\"'] = DOUBLE_QUOTE;
+        for(char ch = 'a'; ch <= 'z'; ++ch) char_class[ch] = LETTER;
+        for(char ch = 'A'; ch <= 'Z'; ++ch) char_class[ch] = LETTER;
+        for(char ch = '0'; ch <= '9'; ++ch) char_class[ch] = DIGIT;
+
+        for(char ch = 0; ch < 128; ++ch)
+            identifier_part[ch] = char_class[ch] == LETTER || char_class[ch] == DIGIT;
+        identifier_part['_'] = true;
 
-        data_types = new HashMap<>();
-        data_types.put("int",     INT);
-        data_types.put("double", DOUBLE);
-        data_types.put("char",  CHAR);
-        data_types.put("void", VOID);
+        operator('+', ADD, ADD_ASSIGN, null);
+        operator('-', SUB, SUB_ASSIGN, null);
+        operator('*', MULTI, MULTI_ASSIGN, null);
+        operator('/', DIV, DIV_ASSIGN, null);
+        operator('%', MOD, MOD_ASSIGN, null);
+        operator('!', REL_NOT, NOT_EQUAL, null);
+        operator('=', ASSIGN, EQUAL, null);
+        operator('^', XOR, XOR_ASSIGN, null);
+
+        operator('&', AND, AND_ASSIGN, REL_AND);
+        operator('|', OR, OR_ASSIGN, REL_OR);
+        operator('>', GREATER, GREATER_EQUAL, RIGHT_SHIFT);
+        operator('<', LESS, LESS_EQUAL, LEFT_SHIFT);
+
+        operator('~', COMPL, null, null);
+        operator('(', LEFT_PAREN, null, null);
+        operator(')', RIGHT_PAREN, null, null);
+        operator('[', LEFT_BRACKET, null, null);
+        operator(']', RIGHT_BRACKET, null, null);
+        operator('{', LEFT_BRACE, null, null);
+        operator('}', RIGHT_BRACE, null, null);
+        operator(',', COMMA, null, null);
+        operator(';', SEMICOLON, null, null);
+    }
+
+    private static void operator(char ch, TokenType alone, TokenType assign, TokenType twice) {
+        char_class[ch] = OPERATOR;
+        single[ch] = alone;
+        with_assign[ch] = assign;
+        doubled[ch] = twice;
     }
 
     public Lexer(SourceBuffer buff) {
+        this(buff, new SymbolTable());
+    }
+
+    /**
+     * Create a lexer that interns identifiers into the symbol table of the
+     * current compilation.
+     */
+    public Lexer(SourceBuffer buff, SymbolTable symbols) {
         this.source = buff;
         this.line = 1;
+        this.symbols = symbols;
+        this.line_start = buff.getOffset();
+        if(buff.isRetained())
+            this.line_map = new LineMap(line_start);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Get current line number.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Whether the source ended inside a block comment.
+     */
+    public boolean endsInComment() {
+        return unterminated;
+    }
+
+    /**
+     * Get the start offsets of the lines scanned so far, null if the source
+     * is not retained.
+     */
+    public LineMap getLineMap() {
+        return line_map;
+    }
+
+    /**
+     * Get the tokens changed by the last <code>relex</code>, null if there
+     * was none.
+     */
+    public TokenEdit getLastEdit() {
+        return last_edit;
     }
 
     public Token scan() {
+        TokenType type = lex();
+        Token token = new Token(count, source, start, end - start, type, line, valid);
+        token.column = start - line_start + 1;
+        count += 1;
+        if(type == IDENTIFIER) {
+            token.symbol = (int) payload;
+            token.value = symbols.name(token.symbol);
+        }
+        else if(type == INTEGER_CONSTANT || type == DOUBLE_CONSTANT || type == CHARACTER_CONSTANT) {
+            token.literal = payload;
+        }
+        // The text will be gone once the buffer moves on. That of a comment
+        // opening is gone already, but is always the same.
+        if(opening)
+            token.value = "/*";
+        else if(!source.isRetained())
+            token.getValue();
+        return token;
+    }
+
+    /**
+     * Pull tokens one by one, until EOF(exclusive). Together with a
+     * <code>ReaderSourceBuffer</code> this lexes input of any size in
+     * constant memory.
+     */
+    public Iterator<Token> tokens() {
+        return new Iterator<Token>() {
+            private Token next = scan();
+
+            @Override
+            public boolean hasNext() {
+                return next.type != EOF;
+            }
+
+            @Override
+            public Token next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                Token token = next;
+                next = scan();
+                return token;
+            }
+        };
+    }
+
+    /**
+     * Scan all the remaining tokens into a token stream, without building
+     * a <code>Token</code> object for each of them. EOF is not included.
+     */
+    public TokenStream scanAll() {
+        if(!source.isRetained()) {
+            TokenStream tokens = new TokenStream(null, symbols);
+            Iterator<Token> iterator = tokens();
+            while(iterator.hasNext())
+                tokens.add(iterator.next());
+            return tokens;
+        }
+
+        TokenStream tokens = new TokenStream(source, symbols);
+        TokenType type = lex();
+        while(type != EOF) {
+            tokens.add(type, start, end - start, line, valid, payload);
+            count += 1;
+            type = lex();
+        }
+        tokens.setLineMap(line_map);
+        return tokens;
+    }
+
+    /**
+     * Re-lex the source of this lexer after a text edit, reusing the tokens
+     * of the previous version wherever the edit cannot have changed them.
+     *
+     * Literals never cross lines, but block comments do, so scanning
+     * restarts at the end of the last token before the edited line, which
+     * is never inside a comment. It stops as soon as a new token starts where an old token
+     * after the edit started, since from there on the text and thus the
+     * tokens are the same; the rest of the old tokens are only shifted.
+     *
+     * @param previous tokens of the source before the edit. The lexer must
+     *                 share its symbol table.
+     * @param offset where the edit happened.
+     * @param removed number of characters removed at offset.
+     * @param inserted text inserted at offset.
+     * @return tokens of the edited source. The range of tokens that changed
+     *         is left in <code>getLastEdit</code>.
+     */
+    public TokenStream relex(TokenStream previous, int offset, int removed, String inserted) {
+        int delta = inserted.length() - removed;
+
+        // Restart after the last token before the edited line. Text before
+        // offset is unchanged, so every old token before it is kept as it is.
+        int line_begin = offset;
+        while(line_begin > 0 && source.charAt(line_begin - 1) != '\n')
+            line_begin -= 1;
+        int first = previous.indexAt(line_begin);
+        // An unterminated comment, reported by its opening, runs on over the
+        // edited line. Scan it again as well.
+        if(first > 0 && previous.type(first - 1) == UNKNOWN
+                && source.charAt(previous.start(first - 1)) == '/')
+            first -= 1;
+        int restart = first > 0 ? previous.start(first - 1) + previous.length(first - 1) : 0;
+        LineMap old_lines = previous.getLineMap();
+        int restart_line = old_lines.lineOf(restart);
+
+        TokenStream tokens = new TokenStream(source, symbols);
+        tokens.append(previous, 0, first, 0, 0);
+        LineMap lines = new LineMap(0);
+        lines.append(old_lines, 0, restart, 0);
+
+        Lexer scanner = new Lexer(source.view(restart, source.getLength()), symbols);
+        scanner.line = restart_line;
+        LineMap new_lines = scanner.line_map;
+        int edit_end = offset + inserted.length();  // end of the edit in new text.
+        int old_index = first;
+        TokenType type = scanner.lex();
+        while(type != EOF) {
+            tokens.add(type, scanner.start, scanner.end - scanner.start,
+                    scanner.line, scanner.valid, scanner.payload);
+
+            if(scanner.start >= edit_end) {
+                int old_start = scanner.start - delta;
+                while(old_index < previous.size() && previous.start(old_index) < old_start)
+                    old_index += 1;
+                if(old_index < previous.size() && previous.start(old_index) == old_start
+                        && previous.type(old_index) == type) {
+                    // Synchronized, shift the untouched suffix.
+                    last_edit = new TokenEdit(first, old_index, tokens.size() - 1);
+                    int line_shift = scanner.line - previous.line(old_index);
+                    tokens.append(previous, old_index + 1, previous.size(), delta, line_shift);
+                    lines.append(new_lines, restart, scanner.start, 0);
+                    lines.append(old_lines, old_start, Integer.MAX_VALUE, delta);
+                    new_lines = null;
+                    break;
+                }
+            }
+            type = scanner.lex();
+        }
+        if(new_lines != null) {
+            lines.append(new_lines, restart, Integer.MAX_VALUE, 0);
+            last_edit = new TokenEdit(first, previous.size(), tokens.size());
+        }
+        tokens.setLineMap(lines);
+        count = tokens.size();
+        return tokens;
+    }
+
+    /**
+     * Scan next token. Its range is left in <code>start</code> and <code>end</code>.
+     */
+    private TokenType lex() {
         char ch = source.next();
         ch  = skipWhitespace(ch);
-        // Encounter eof.
-        if(ch == '\0') return new Token("", EOF, line, true);
-        start = source.getOffset()-1;
+        payload = -1;
+        opening = false;
+        if(open_comment >= 0) {
+            // Report the opening of an unterminated comment, then hit the eof.
+            start = open_comment;
+            end = start + 2;
+            line = comment_line;
+            line_start = comment_line_start;
+            open_comment = -1;
+            opening = true;
+            valid = false;
+            return UNKNOWN;
+        }
+        start = source.getLastOffset();
+        source.mark(start);
 
-        if(Character.isLetter(ch)) return identifier();
-        if(Character.isDigit((ch))) return number();
-        if(ch == '\'') return charLiteral();
-        if(ch == '\"') return stringLiteral();
+        // Slow path, only letters and digits are meaningful outside ASCII.
+        if(ch >= 128) {
+            if(Character.isLetter(ch)) return identifier();
+            if(Character.isDigit(ch)) return number(ch);
+            return makeToken(UNKNOWN);
+        }
 
-        switch (ch) {
-            case '+': return makeToken(source.peek('=') ? ADD_ASSIGN : ADD);
-            case '-': return makeToken(source.peek('=') ? SUB_ASSIGN : SUB);
-            case '*': return makeToken(source.peek('=') ? MULTI_ASSIGN : MULTI);
-            case '/': return makeToken(source.peek('=') ? DIV_ASSIGN : DIV);
-            case '%': return makeToken(source.peek('=') ? MOD_ASSIGN : MOD);
-            case '!': return makeToken(source.peek('=') ? NOT_EQUAL : REL_NOT);
-            case '=': return makeToken(source.peek('=') ? EQUAL : ASSIGN);
-            case '^': return makeToken(source.peek('=') ? XOR_ASSIGN : XOR);
-
-            case '&': return makeToken('=', '&', AND_ASSIGN, REL_AND, AND);
-            case '|': return makeToken('=', '|', OR_ASSIGN, REL_OR, OR);
-            case '>': return makeToken('=', '>', GREATER_EQUAL, RIGHT_SHIFT, GREATER);
-            case '<': return makeToken('=', '<', LESS_EQUAL, LEFT_SHIFT, LESS);
-
-            case '~': return makeToken(COMPL);
-            case '(': return makeToken(LEFT_PAREN);
-            case ')': return makeToken(RIGHT_PAREN);
-            case '[': return makeToken(LEFT_BRACKET);
-            case ']': return makeToken(RIGHT_BRACKET);
-            case '{': return makeToken(LEFT_BRACE);
-            case '}': return makeToken(RIGHT_BRACE);
-            case ',': return makeToken(COMMA);
-            case ';': return makeToken(SEMICOLON);
+        switch (char_class[ch]) {
+            // Encounter eof.
+            case END:
+                end = start;
+                valid = true;
+                return EOF;
+            case LETTER: return identifier();
+            case DIGIT: return number(ch);
+            case QUOTE: return charLiteral();
+            case DOUBLE_QUOTE: return stringLiteral();
+            case OPERATOR: return operator(ch);
         }
 
         // TODO: log error.
         return makeToken(UNKNOWN);
     }
 
-    // Skip any white space and count line number.
+    // Skip any white space and comments, and count line number. Nothing
+    // skipped is asked for again, so a streaming buffer can drop it, which
+    // it is told at each line, after each comment, and every 1024 blanks.
     private char skipWhitespace(char ch) {
-        while(true) {
-            if(ch == ' ' || ch == '\t') {
+        int blanks = 0;
+        while(ch < 128) {
+            byte cls = char_class[ch];
+            if(cls == SPACE) {
+                if((++blanks & 1023) == 0)
+                    source.mark(source.getOffset());
                 ch = source.next();
             }
-            else if(ch == '\n') {
+            else if(cls == NEWLINE) {
+                newline(source.getOffset());
+                source.mark(source.getOffset());
+                ch = source.next();
+            }
+            else if(ch == '/' && (source.peek() == '/' || source.peek() == '*')) {
+                skipComment(source.getLastOffset());
+                source.mark(source.getOffset());
                 ch = source.next();
-                line += 1;
             }
             else {
                 break;
@@ -94,85 +375,265 @@ public class Lexer {
         return ch;
     }
 
-    private Token identifier() {
+    private void newline(int next_line_start) {
+        line_start = next_line_start;
+        if(line_map != null)
+            line_map.add(line_start);
+        line += 1;
+    }
+
+    /**
+     * Skip the comment starting at <code>begin</code>, with bulk searches
+     * where the source allows them. A line comment stops before its
+     * newline; a block comment counts the lines it covers.
+     */
+    private void skipComment(int begin) {
+        if(source.next() == '/') {
+            source.skipTo('\n', '\n');
+            return;
+        }
+
+        int begin_line = line;
+        int begin_line_start = line_start;
+        while(true) {
+            char ch = source.skipTo('*', '\n');
+            if(ch == '\0') {
+                unterminated(begin, begin_line, begin_line_start);
+                return;
+            }
+            source.next();
+            if(ch == '\n')
+                newline(source.getOffset());
+            else if(source.peek('/'))
+                return;
+        }
+    }
+
+    private void unterminated(int begin, int begin_line, int begin_line_start) {
+        open_comment = begin;
+        comment_line = begin_line;
+        comment_line_start = begin_line_start;
+        unterminated = true;
+    }
+
+    private TokenType identifier() {
         char ch;
         do {
             ch = source.next();
-        } while(Character.isLetterOrDigit(ch) || ch == '_');
+        } while(ch < 128 ? identifier_part[ch] : Character.isLetterOrDigit(ch));
         source.back();
-        String token_value = source.substring(start, source.getOffset());
-        if(keywords.containsKey(token_value))
-            return new Token(token_value, keywords.get(token_value), line, true);
-        else if(data_types.containsKey(token_value))
-            return new Token(token_value, data_types.get(token_value), line, true);
-        else
-            return new Token(token_value, IDENTIFIER, line, true);
+        int length = source.getOffset() - start;
+        TokenType type = keyword(start, length);
+        if(type == IDENTIFIER)
+            payload = symbols.intern(source, start, length);
+        return makeToken(type);
     }
 
-    private Token number() {
-        char ch;
+    /**
+     * Classify the identifier in [start, start+length) as a keyword, a type
+     * specifier or a plain identifier. The length and the first character
+     * pick at most one candidate, which is then compared in place.
+     */
+    private TokenType keyword(int start, int length) {
+        switch (length) {
+            case 2:
+                return matches(start, IF);
+            case 3:
+                return matches(start, INT);
+            case 4:
+                switch (source.charAt(start)) {
+                    case 'e': return matches(start, ELSE);
+                    case 'c': return matches(start, CHAR);
+                    case 'v': return matches(start, VOID);
+                }
+                break;
+            case 5:
+                switch (source.charAt(start)) {
+                    case 'p': return matches(start, PRINT);
+                    case 'w': return matches(start, WHILE);
+                    case 'b': return matches(start, BREAK);
+                }
+                break;
+            case 6:
+                switch (source.charAt(start)) {
+                    case 'r': return matches(start, RETURN);
+                    case 'd': return matches(start, DOUBLE);
+                }
+                break;
+            case 8:
+                return matches(start, CONTINUE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType matches(int start, TokenType keyword) {
+        String spelling = keyword.spelling;
+        for(int i=0; i<spelling.length(); ++i) {
+            if(source.charAt(start + i) != spelling.charAt(i))
+                return IDENTIFIER;
+        }
+        return keyword;
+    }
+
+    /**
+     * Scan a number whose first digit is <code>ch</code>. The value is
+     * accumulated while scanning. An integer too large for a long is
+     * invalid. A real number whose digits fit in 53 bits and which has at
+     * most 22 decimals is exactly one division, since both operands are
+     * exact doubles; other ones are left to Double.parseDouble.
+     */
+    private TokenType number(char ch) {
+        long value = 0;
+        boolean exact = true;   // value holds every digit so far.
         do {
+            int digit = digit(ch);
+            if(exact && value <= (Long.MAX_VALUE - digit) / 10)
+                value = value * 10 + digit;
+            else
+                exact = false;
             ch = source.next();
-        } while (Character.isDigit(ch));
+        } while (isDigit(ch));
 
         // Determine whether it is a real number.
         if(ch != '.') {
             source.back();
-            String token_value = source.substring(start, source.getOffset());
-            return new Token(token_value, INTEGER_CONSTANT, line, true);
+            // Too large for a long: not valid, and without a value, as
+            // literal gives it. The parser falls back to a double.
+            payload = exact ? value : 0;
+            return makeToken(INTEGER_CONSTANT, exact);
         }
 
         // construct real number.
-        do {
+        int scale = 0;
+        ch = source.next();
+        while(isDigit(ch)) {
+            int digit = digit(ch);
+            if(exact && value <= (Long.MAX_VALUE - digit) / 10) {
+                value = value * 10 + digit;
+                scale += 1;
+            }
+            else {
+                exact = false;
+            }
             ch = source.next();
-        } while(Character.isDigit((ch)));
+        }
         source.back();
 
-        String token_value = source.substring(start, source.getOffset());
-        return new Token(token_value, DOUBLE_CONSTANT, line, true);
+        double real;
+        if(exact && value <= 1L << 53 && scale < powers_of_ten.length) {
+            real = value / powers_of_ten[scale];
+        }
+        else {
+            try {
+                real = Double.parseDouble(source.substring(start, source.getOffset()));
+            } catch (NumberFormatException e) {
+                payload = 0;
+                return makeToken(DOUBLE_CONSTANT, false);
+            }
+        }
+        payload = Double.doubleToRawLongBits(real);
+        return makeToken(DOUBLE_CONSTANT);
     }
 
-    private Token charLiteral() {
+    private TokenType charLiteral() {
         char ch;
+        char first = '\0', second = '\0';
+        int chars = 0;
         ch = source.next();
         while(ch != '\'' && ch != '\n' && ch != '\0') {
+            if(chars == 0)
+                first = ch;
+            else if(chars == 1)
+                second = ch;
+            chars += 1;
             ch = source.next();
         }
-        String token_value = source.substring(start, source.getOffset());
-        if(ch != '\'') {
-            return new Token(token_value, CHARACTER_CONSTANT, line, false);
-        } else {
-            return new Token(token_value, CHARACTER_CONSTANT, line, true);
-        }
+        payload = first == '\\' && chars > 1 ? charValue(second, true) : first;
+        // Leave the newline of an unterminated literal to be counted.
+        if(ch != '\'')
+            source.back();
+        return makeToken(CHARACTER_CONSTANT, ch == '\'');
     }
 
-    private Token stringLiteral() {
+    private TokenType stringLiteral() {
         char ch;
         ch = source.next();
         while(ch != '\"' && ch != '\n' && ch != '\0') {
             ch = source.next();
         }
-        String token_value = source.substring(start, source.getOffset());
-        if(ch != '\"') {
-            return new Token(token_value, STRING, line, false);
-        } else {
-            return new Token(token_value, STRING, line, true);
-        }
+        // Leave the newline of an unterminated literal to be counted.
+        if(ch != '\"')
+            source.back();
+        return makeToken(STRING, ch == '\"');
     }
 
-    private Token makeToken(TokenType type) {
-        String value = source.substring(start, source.getOffset());
-        return new Token(value, type, line, true);
+    /**
+     * One or two character operators, looked up in the transition table.
+     */
+    private TokenType operator(char ch) {
+        if(with_assign[ch] != null && source.peek('='))
+            return makeToken(with_assign[ch]);
+        if(doubled[ch] != null && source.peek(ch))
+            return makeToken(doubled[ch]);
+        return makeToken(single[ch]);
     }
 
-    private Token makeToken(char case1, char case2, TokenType type1, TokenType type2, TokenType type0) {
-        TokenType type;
-        if(source.peek(case1))
-            type = type1;
-        else if(source.peek(case2))
-            type = type2;
-        else
-            type = type0;
-        return makeToken(type);
+    private TokenType makeToken(TokenType type) {
+        return makeToken(type, true);
+    }
+
+    private TokenType makeToken(TokenType type, boolean valid) {
+        this.end = source.getOffset();
+        this.valid = valid;
+        return type;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch < 128 ? char_class[ch] == DIGIT : Character.isDigit(ch);
+    }
+
+    private static int digit(char ch) {
+        return ch < 128 ? ch - '0' : Character.digit(ch, 10);
+    }
+
+    /**
+     * Value of a character in a character constant, after a backslash if
+     * <code>escaped</code>.
+     */
+    static char charValue(char ch, boolean escaped) {
+        if(!escaped)
+            return ch;
+        switch (ch) {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case '0': return '\0';
+            default: return ch;
+        }
+    }
+
+    /**
+     * Compute the value of a constant from its text, the same as the lexer
+     * does while scanning. Used for tokens that do not come from a source.
+     */
+    static long literal(TokenType type, String text) {
+        try {
+            switch (type) {
+                case INTEGER_CONSTANT:
+                    return Long.parseLong(text);
+                case DOUBLE_CONSTANT:
+                    return Double.doubleToRawLongBits(Double.parseDouble(text));
+                case CHARACTER_CONSTANT:
+                    int end = text.length() > 1 && text.endsWith("'") ? text.length() - 1 : text.length();
+                    if(end <= 1)
+                        return 0;
+                    if(text.charAt(1) == '\\' && end > 2)
+                        return charValue(text.charAt(2), true);
+                    return text.charAt(1);
+            }
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        return -1;
     }
 }
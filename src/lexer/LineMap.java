@@ -0,0 +1,95 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * Start offsets of the lines of a source, recorded by the lexer while it
+ * counts newlines. Turns an offset into a line with a binary search and
+ * gives the range of any line in constant time.
+ */
+public class LineMap {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] starts;   // starts[i] is the offset of line i+1.
+    private int count;
+
+    /**
+     * @param first_start offset where the first line begins.
+     */
+    public LineMap(int first_start) {
+        this.starts = new int[DEFAULT_CAPACITY];
+        this.starts[0] = first_start;
+        this.count = 1;
+    }
+
+    /**
+     * Record that a new line begins at given offset.
+     */
+    public void add(int offset) {
+        if(count == starts.length)
+            starts = Arrays.copyOf(starts, count * 2);
+        starts[count] = offset;
+        count += 1;
+    }
+
+    /**
+     * Append the line starts of another map that lie in (low, high],
+     * moved by <code>shift</code>.
+     */
+    public void append(LineMap other, int low, int high, int shift) {
+        int from = other.find(low) + 1;
+        int to = other.find(high) + 1;
+        if(from >= to)
+            return;
+        if(count + to - from > starts.length)
+            starts = Arrays.copyOf(starts, Math.max(starts.length * 2, count + to - from));
+        for(int i=from; i<to; ++i)
+            starts[count++] = other.starts[i] + shift;
+    }
+
+    /**
+     * Number of lines.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Get the line that contains given offset.
+     */
+    public int lineOf(int offset) {
+        return Math.max(find(offset), 0) + 1;
+    }
+
+    /**
+     * Get the offset where given line begins.
+     */
+    public int start(int line) {
+        return starts[line - 1];
+    }
+
+    /**
+     * Get the offset where given line ends, excluding the newline.
+     * @param length length of the source, where the last line ends.
+     */
+    public int end(int line, int length) {
+        return line < count ? starts[line] - 1 : length;
+    }
+
+    /**
+     * Index of the last line start not after offset, -1 if there is none.
+     */
+    private int find(int offset) {
+        int low = 0;
+        int high = count - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            if(starts[mid] <= offset)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+}
@@ -0,0 +1,185 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source buffer that reads the file through a memory mapping and scans
+ * its UTF-8 bytes directly, so the source never has to be decoded into a
+ * <code>String</code> up front.
+ *
+ * Offsets are byte offsets. ASCII characters are returned as they are,
+ * multi-byte sequences are decoded on the fly, and only the slices asked
+ * for by <code>substring</code> are turned into strings.
+ */
+public class MappedSourceBuffer extends SourceBuffer {
+
+    // Public Methods
+
+    public MappedSourceBuffer(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("source file is too large: " + path);
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        // skipTo reads words, and relies on the first byte being the lowest.
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.offset = 0;
+        this.length = buffer.limit();
+        this.width = 0;
+    }
+
+    private MappedSourceBuffer(MappedByteBuffer buffer, int begin, int end) {
+        this.buffer = buffer;
+        this.offset = begin;
+        this.length = end;
+        this.width = 0;
+    }
+
+    @Override
+    public SourceBuffer view(int begin, int end) {
+        return new MappedSourceBuffer(buffer, begin, end);
+    }
+
+    @Override
+    public char next() {
+        if(offset >= length) {
+            offset += 1;
+            width = 1;
+            return '\0';
+        }
+        byte b = buffer.get(offset);
+        if(b >= 0) {
+            offset += 1;
+            width = 1;
+            return (char) b;
+        }
+        return decode(b);
+    }
+
+    @Override
+    public char peek() {
+        int save_offset = offset;
+        int save_width = width;
+        char ch = next();
+        offset = save_offset;
+        width = save_width;
+        return ch;
+    }
+
+    /**
+     * Set current pointer to the previous character. Only the character
+     * returned by the last <code>next</code> can be stepped back over.
+     */
+    @Override
+    public void back() {
+        if(offset >= width)
+            offset -= width;
+        width = 0;
+    }
+
+    @Override
+    public int getLastOffset() {
+        return offset - width;
+    }
+
+    /**
+     * Get the byte at given offset. Non-ASCII bytes are returned as they are,
+     * which is enough to compare against ASCII text.
+     */
+    @Override
+    public char charAt(int index) {
+        return index < length ? (char) (buffer.get(index) & 0xFF) : '\0';
+    }
+
+    /**
+     * Search eight bytes at a time. ASCII characters never occur inside
+     * multi-byte sequences, so bytes can be compared directly.
+     */
+    @Override
+    public char skipTo(char a, char b) {
+        long first = 0x0101010101010101L * a;
+        long second = 0x0101010101010101L * b;
+        int i = offset;
+        width = 0;
+        for(; i + 8 <= length; i += 8) {
+            long word = buffer.getLong(i);
+            // Only the lowest byte flagged is reliable, which is the one needed.
+            long found = zeroBytes(word ^ first) | zeroBytes(word ^ second);
+            if(found != 0) {
+                offset = i + (Long.numberOfTrailingZeros(found) >>> 3);
+                return (char) buffer.get(offset);
+            }
+        }
+        for(; i < length; ++i) {
+            byte ch = buffer.get(i);
+            if(ch == a || ch == b) {
+                offset = i;
+                return (char) ch;
+            }
+        }
+        offset = Math.max(offset, length);
+        return '\0';
+    }
+
+    private static long zeroBytes(long word) {
+        return (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+    }
+
+    @Override
+    public String substring(int beginIndex, int endIndex) {
+        byte[] bytes = new byte[endIndex - beginIndex];
+        for(int i=0; i<bytes.length; ++i)
+            bytes[i] = buffer.get(beginIndex + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Private Methods
+
+    /**
+     * Decode the multi-byte sequence starting with lead byte <code>b</code>.
+     * Malformed input and characters outside the BMP become U+FFFD.
+     */
+    private char decode(byte b) {
+        int count;
+        int code;
+        if((b & 0xE0) == 0xC0) {
+            count = 1;
+            code = b & 0x1F;
+        } else if((b & 0xF0) == 0xE0) {
+            count = 2;
+            code = b & 0x0F;
+        } else if((b & 0xF8) == 0xF0) {
+            count = 3;
+            code = b & 0x07;
+        } else {
+            offset += 1;
+            width = 1;
+            return '\uFFFD';
+        }
+
+        int i = 1;
+        for(; i<=count && offset+i < length; ++i) {
+            byte cont = buffer.get(offset + i);
+            if((cont & 0xC0) != 0x80)
+                break;
+            code = (code << 6) | (cont & 0x3F);
+        }
+        offset += i;
+        width = i;
+        if(i <= count || code > 0xFFFF)
+            return '\uFFFD';
+        return (char) code;
+    }
+
+    // Private Properties
+
+    private MappedByteBuffer buffer;
+    private int width;  // width in bytes of the last character returned by next.
+
+}
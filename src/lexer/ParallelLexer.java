@@ -0,0 +1,138 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lex a large source on several threads.
+ *
+ * String and character literals never span lines, so the source can be cut
+ * right after newlines into chunks that are lexed independently. The chunks
+ * are then joined in order, with lines and symbol ids fixed up, which gives
+ * exactly the same token stream as a single lexer.
+ *
+ * Block comments may span lines. When a chunk ends inside one, the chunks
+ * after it started at a wrong state, and the rest of the source from that
+ * chunk on is lexed again sequentially.
+ */
+public class ParallelLexer {
+
+    // Sources smaller than this are not worth splitting.
+    private static final int MIN_CHUNK = 64 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int chunks;
+
+    public ParallelLexer(ForkJoinPool pool, int chunks) {
+        this.pool = pool;
+        this.chunks = chunks;
+    }
+
+    public ParallelLexer(int chunks) {
+        this(ForkJoinPool.commonPool(), chunks);
+    }
+
+    /**
+     * Scan the whole source, like <code>Lexer.scanAll</code>. A source that
+     * is not retained cannot be cut into views, and is scanned by a single
+     * lexer.
+     */
+    public TokenStream scanAll(SourceBuffer source, SymbolTable symbols) {
+        if(!source.isRetained())
+            return new Lexer(source, symbols).scanAll();
+        int[] bounds = split(source);
+        int count = bounds.length - 1;
+        if(count == 1)
+            return new Lexer(source, symbols).scanAll();
+
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        for(int i=0; i<count; ++i) {
+            final SourceBuffer view = source.view(bounds[i], bounds[i+1]);
+            final int end = bounds[i+1];
+            tasks.add(pool.submit(() -> {
+                Lexer lexer = new Lexer(view);
+                TokenStream tokens = lexer.scanAll();
+                // A '\0' inside the chunk ends the whole source.
+                boolean stopped = view.getOffset() <= end;
+                return new Chunk(lexer, tokens, stopped);
+            }));
+        }
+
+        // Join in source order. Interning the chunk symbols in this order
+        // assigns the same ids as a sequential scan would.
+        TokenStream tokens = new TokenStream(source, symbols);
+        LineMap lines = new LineMap(0);
+        int line_shift = 0;
+        for(int i=0; i<count; ++i) {
+            Chunk chunk = tasks.get(i).join();
+            if(chunk.in_comment && i + 1 < count) {
+                for(int j=i+1; j<count; ++j)
+                    tasks.get(j).cancel(false);
+                SourceBuffer rest = source.view(bounds[i], source.getLength());
+                Lexer lexer = new Lexer(rest);
+                chunk = new Chunk(lexer, lexer.scanAll(), true);
+            }
+            int[] symbol_map = new int[chunk.symbols.size()];
+            for(int id=0; id<symbol_map.length; ++id)
+                symbol_map[id] = symbols.intern(chunk.symbols.name(id));
+            tokens.append(chunk.tokens, line_shift, symbol_map);
+            lines.append(chunk.lines, lines.start(lines.count()), Integer.MAX_VALUE, 0);
+            line_shift += chunk.newlines;
+            if(chunk.stopped)
+                break;
+        }
+        tokens.setLineMap(lines);
+        return tokens;
+    }
+
+    public TokenStream scanAll(SourceBuffer source) {
+        return scanAll(source, new SymbolTable());
+    }
+
+    /**
+     * Cut the source into at most <code>chunks</code> pieces, each ending
+     * right after a newline.
+     * @return boundaries, chunk i is [bounds[i], bounds[i+1]).
+     */
+    private int[] split(SourceBuffer source) {
+        int length = source.getLength();
+        int count = Math.max(1, Math.min(chunks, length / MIN_CHUNK));
+
+        int[] bounds = new int[count + 1];
+        int n = 1;
+        for(int i=1; i<count; ++i) {
+            int cut = Math.max((int) ((long) length * i / count), bounds[n-1]);
+            while(cut < length && source.charAt(cut) != '\n')
+                cut += 1;
+            if(cut >= length - 1)
+                break;
+            bounds[n++] = cut + 1;
+        }
+        bounds[n] = length;
+
+        int[] result = new int[n + 1];
+        System.arraycopy(bounds, 0, result, 0, n + 1);
+        return result;
+    }
+
+    private static class Chunk {
+        final TokenStream tokens;
+        final SymbolTable symbols;
+        final LineMap lines;
+        final int newlines;
+        final boolean stopped;
+
+        final boolean in_comment;   // ended inside a block comment.
+
+        Chunk(Lexer lexer, TokenStream tokens, boolean stopped) {
+            this.tokens = tokens;
+            this.symbols = lexer.getSymbols();
+            this.lines = lexer.getLineMap();
+            this.newlines = lexer.getLine() - 1;
+            this.stopped = stopped;
+            this.in_comment = lexer.endsInComment();
+        }
+    }
+}
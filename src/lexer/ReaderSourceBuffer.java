@@ -0,0 +1,165 @@
+package lexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * A source buffer that pulls characters from a <code>Reader</code> through
+ * a fixed-size window, so input of any size is scanned in constant memory.
+ *
+ * Only the text from the last <code>mark</code> on is kept when the window
+ * is refilled, so a token that straddles a refill is still read correctly
+ * but earlier text can no longer be asked for. The window only grows when a
+ * single token is longer than it.
+ */
+public class ReaderSourceBuffer extends SourceBuffer implements Closeable {
+
+    private static final int DEFAULT_WINDOW = 64 * 1024;
+
+    // Public Methods
+
+    public ReaderSourceBuffer(Reader reader) {
+        this(reader, DEFAULT_WINDOW);
+    }
+
+    public ReaderSourceBuffer(Reader reader, int window_size) {
+        this.reader = reader;
+        this.window = new char[window_size];
+        this.base = 0;
+        this.limit = 0;
+        this.mark = 0;
+        this.eof = false;
+        this.offset = 0;
+        this.length = Integer.MAX_VALUE;
+    }
+
+    /**
+     * A view: the whole text is in the window, and nothing is read.
+     */
+    private ReaderSourceBuffer(char[] text, int begin) {
+        this.reader = null;
+        this.window = text;
+        this.base = begin;
+        this.limit = text.length;
+        this.mark = begin;
+        this.eof = true;
+        this.offset = begin;
+        this.length = begin + text.length;
+    }
+
+    @Override
+    public char next() {
+        char ch = charAt(offset);
+        offset += 1;
+        return ch;
+    }
+
+    @Override
+    public char peek() {
+        return charAt(offset);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(index - base >= limit && !fill(index))
+            return '\0';
+        return window[index - base];
+    }
+
+    @Override
+    public String substring(int beginIndex, int endIndex) {
+        return new String(window, beginIndex - base, endIndex - beginIndex);
+    }
+
+    @Override
+    public void mark(int offset) {
+        this.mark = offset;
+    }
+
+    @Override
+    public boolean isRetained() {
+        // A view keeps its whole text.
+        return reader == null;
+    }
+
+    /**
+     * Read on character by character, letting the window drop the text
+     * skipped over as it goes.
+     */
+    @Override
+    public char skipTo(char a, char b) {
+        while(true) {
+            char ch = charAt(offset);
+            if(ch == a || ch == b)
+                return ch;
+            if(ch == '\0' && offset - base >= limit)
+                return '\0';
+            offset += 1;
+            mark = offset;
+        }
+    }
+
+    /**
+     * Copy [begin, end) into a buffer of its own. The range has to be in
+     * the window, i.e. not before the last mark.
+     */
+    @Override
+    public SourceBuffer view(int begin, int end) {
+        if(end > begin)
+            fill(end - 1);
+        if(begin < base || begin > end || end - base > limit)
+            throw new IndexOutOfBoundsException("[" + begin + ", " + end + ") is not in the window");
+        return new ReaderSourceBuffer(Arrays.copyOfRange(window, begin - base, end - base), begin);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(reader != null)
+            reader.close();
+    }
+
+    // Private Methods
+
+    /**
+     * Read more characters until <code>index</code> is inside the window.
+     * @return false if the input ends before it.
+     */
+    private boolean fill(int index) {
+        while(!eof && index - base >= limit) {
+            // Drop the text before mark, then grow only if that is not enough.
+            int keep = Math.max(0, Math.min(mark, offset) - base);
+            if(keep > 0) {
+                System.arraycopy(window, keep, window, 0, limit - keep);
+                base += keep;
+                limit -= keep;
+            }
+            if(limit == window.length)
+                window = Arrays.copyOf(window, window.length * 2);
+
+            int count;
+            try {
+                count = reader.read(window, limit, window.length - limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if(count == -1)
+                eof = true;
+            else
+                limit += count;
+        }
+        return index - base < limit;
+    }
+
+    // Private Properties
+
+    private Reader reader;
+    private char[] window;
+    private int base;   // offset of window[0] in the source.
+    private int limit;  // number of valid characters in window.
+    private int mark;   // nothing before mark will be asked for again.
+    private boolean eof;
+
+}
@@ -66,6 +66,37 @@ public class SourceBuffer {
         return offset;
     }
 
+    /**
+     * Get offset of the character returned by the last <code>next</code>.
+     * @return offset.
+     */
+    public int getLastOffset() {
+        return offset - 1;
+    }
+
+    /**
+     * Get the character at given offset, without moving current pointer.
+     */
+    public char charAt(int index) {
+        return index < length ? source.charAt(index) : '\0';
+    }
+
+    /**
+     * Move current pointer to the first <code>a</code> or <code>b</code> at
+     * or after it, without reading it. Both must be ASCII. The text skipped
+     * over will not be asked for again.
+     * @return the character found, '\0' if the source ends first.
+     */
+    public char skipTo(char a, char b) {
+        while(offset < length) {
+            char ch = source.charAt(offset);
+            if(ch == a || ch == b)
+                return ch;
+            offset += 1;
+        }
+        return '\0';
+    }
+
     /**
      * The same as String's substring.
      */
@@ -73,10 +104,56 @@ public class SourceBuffer {
         return source.substring(beginIndex, endIndex);
     }
 
+    /**
+     * Tell the buffer that text before <code>offset</code> will not be asked
+     * for again. Buffers that keep the whole source ignore it.
+     */
+    public void mark(int offset) {
+    }
+
+    /**
+     * Whether text that has been scanned stays available to
+     * <code>substring</code>, so tokens can cut their values lazily.
+     */
+    public boolean isRetained() {
+        return true;
+    }
+
+    /**
+     * Get the length of the source, i.e. the offset where it ends.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Create an independent buffer over [begin, end) of the same source.
+     * Offsets stay the same as in this buffer, and the view ends at
+     * <code>end</code>. Views can be scanned by different threads.
+     */
+    public SourceBuffer view(int begin, int end) {
+        SourceBuffer view = new SourceBuffer(source);
+        view.offset = begin;
+        view.length = end;
+        return view;
+    }
+
+    // Protected Properties
+
+    protected int offset;
+    protected int length;
+
     // Private Properties
 
     private String source;
-    private int offset;
-    private int length;
+
+    /**
+     * Used by subclasses that keep the source in their own storage.
+     */
+    protected SourceBuffer() {
+        this.offset = 0;
+        this.source = null;
+        this.length = 0;
+    }
 
 }
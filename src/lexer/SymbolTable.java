@@ -0,0 +1,129 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * Interning table of identifiers. Every distinct spelling gets a dense
+ * integer id, so later phases can compare names by id and all the tokens
+ * of one name share a single string.
+ *
+ * A table belongs to one compilation and is not thread-safe.
+ */
+public class SymbolTable {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // region Properties
+
+    private int[] table;      // open addressing, holds id+1, 0 means empty.
+    private String[] names;
+    private int[] hashes;
+    private int size;
+
+    // endregion
+
+    public SymbolTable() {
+        this.table = new int[DEFAULT_CAPACITY * 2];
+        this.names = new String[DEFAULT_CAPACITY];
+        this.hashes = new int[DEFAULT_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Intern the identifier in [start, start+length) of the source. ASCII
+     * names are hashed and compared in place, so a name that was seen before
+     * costs no allocation.
+     * @return symbol id.
+     */
+    public int intern(SourceBuffer source, int start, int length) {
+        int hash = 0;
+        for(int i=0; i<length; ++i) {
+            char ch = source.charAt(start + i);
+            if(ch >= 128)
+                return intern(source.substring(start, start + length));
+            hash = 31 * hash + ch;
+        }
+
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while(table[slot] != 0) {
+            int id = table[slot] - 1;
+            if(hashes[id] == hash && matches(names[id], source, start, length))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return add(source.substring(start, start + length), hash, slot);
+    }
+
+    /**
+     * Intern a name given as string.
+     * @return symbol id.
+     */
+    public int intern(String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while(table[slot] != 0) {
+            int id = table[slot] - 1;
+            if(hashes[id] == hash && names[id].equals(name))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return add(name, hash, slot);
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // region Utils
+
+    private int add(String name, int hash, int slot) {
+        int id = size;
+        if(id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        size += 1;
+
+        // Keep the load factor under 1/2.
+        if(size * 2 > table.length)
+            rehash();
+        return id;
+    }
+
+    private void rehash() {
+        int[] grown = new int[table.length * 2];
+        int mask = grown.length - 1;
+        for(int id=0; id<size; ++id) {
+            int slot = spread(hashes[id]) & mask;
+            while(grown[slot] != 0)
+                slot = (slot + 1) & mask;
+            grown[slot] = id + 1;
+        }
+        table = grown;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, SourceBuffer source, int start, int length) {
+        if(name.length() != length)
+            return false;
+        for(int i=0; i<length; ++i) {
+            if(name.charAt(i) != source.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    // endregion
+}
@@ -4,21 +4,45 @@ import utils.XMLPrintable;
 
 public class Token implements XMLPrintable {
     public int number;
-    public String value;
     public TokenType type;
     public int line;
     public boolean valid;
 
-    public static int count = 0;
+    // Range of the token in the source. offset is -1 if the token does not
+    // come from a source buffer.
+    public int offset;
+    public int length;
 
-    public Token(String value, TokenType type, int line, boolean valid) {
-        this.number = Token.count;
-        Token.count += 1;
+    // Column of the first character in its line, starting from 1. It is
+    // -1 if unknown.
+    public int column;
 
-        this.value = value;
+    // Symbol id of an identifier, -1 for other tokens.
+    public int symbol;
+
+    // Value of a numeric or character constant. A double constant keeps
+    // the raw bits of its value, see getDouble.
+    public long literal;
+
+    // Materialized lazily from source, see getValue. The lexer package
+    // fills in the interned name of identifiers directly.
+    String value;
+    private SourceBuffer source;
+
+    /**
+     * Create a token that only records where it is in the source. Its value
+     * is not built until <code>getValue</code> is called.
+     */
+    public Token(int number, SourceBuffer source, int offset, int length, TokenType type, int line, boolean valid) {
+        this.number = number;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.type = type;
         this.line = line;
         this.valid = valid;
+        this.symbol = -1;
+        this.column = -1;
     }
 
     public Token(int number, String value, TokenType type, int line, boolean valid) {
@@ -27,13 +51,37 @@ public class Token implements XMLPrintable {
         this.type = type;
         this.line = line;
         this.valid = valid;
+        this.offset = -1;
+        this.length = value.length();
+        this.symbol = -1;
+        this.column = -1;
+        this.literal = Lexer.literal(type, value);
+    }
+
+    public double getDouble() {
+        return Double.longBitsToDouble(literal);
+    }
+
+    /**
+     * Get the text of the token. Tokens with a fixed spelling share the
+     * spelling of their type, others are cut from the source on first use.
+     */
+    public String getValue() {
+        if(value == null) {
+            if(type.spelling != null)
+                value = type.spelling;
+            else
+                value = source.substring(offset, offset + length);
+            source = null;
+        }
+        return value;
     }
 
     @Override
     public String toString() {
         return number + ":" +
                 " type = " + type +
-                " value= " + value +
+                " value= " + getValue() +
                 " line= " + line +
                 " valid= " + valid;
     }
@@ -42,7 +90,7 @@ public class Token implements XMLPrintable {
         StringBuffer str = new StringBuffer();
         append(str, "<token>\n", indent);
         append(str, "<number>" + this.number + "</number>\n", indent+1);
-        append(str, "<value>" + this.value + "</value>\n", indent+1);
+        append(str, "<value>" + getValue() + "</value>\n", indent+1);
         append(str,"<type>" + this.type + "</type>\n", indent+1);
         append(str,"<line>" + this.line + "</line>\n", indent+1);
         append(str,"<valid>" + this.valid + "</valid>\n", indent+1);
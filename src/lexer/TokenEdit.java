@@ -0,0 +1,25 @@
+package lexer;
+
+/**
+ * The tokens changed by a text edit: tokens [begin, old_end) before the edit
+ * were replaced by tokens [begin, new_end) after it. The tokens before begin
+ * are the same, and the tokens after the range are the same but shifted.
+ */
+public class TokenEdit {
+    public final int begin;
+    public final int old_end;
+    public final int new_end;
+
+    public TokenEdit(int begin, int old_end, int new_end) {
+        this.begin = begin;
+        this.old_end = old_end;
+        this.new_end = new_end;
+    }
+
+    /**
+     * How far the tokens after the edit moved.
+     */
+    public int shift() {
+        return new_end - old_end;
+    }
+}
@@ -0,0 +1,149 @@
+package lexer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * Binary token file, the compact replacement of the lexer xml output.
+ *
+ * Layout, all numbers big-endian:
+ * <pre>
+ *   header   magic "ZTOK", version, token count, offset of the string table
+ *   records  one fixed-size record per token:
+ *            type(1) valid(1) line(4) offset(4) length(4) value(4) payload(8)
+ *   strings  string count, then (byte length, UTF-8 bytes) per string
+ * </pre>
+ * <code>value</code> indexes the string table, or is -1 for tokens whose
+ * type has a fixed spelling. Each distinct value is stored once.
+ */
+public class TokenFile {
+
+    private static final int MAGIC = 0x5A544F4B;  // "ZTOK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 26;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    /**
+     * Writes tokens one at a time. The string table and the header are
+     * written on close.
+     */
+    public static class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+        private final ByteArrayOutputStream table = new ByteArrayOutputStream();
+        private final DataOutputStream table_out = new DataOutputStream(table);
+        private int count;
+
+        public Writer(String path) throws IOException {
+            this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        public void write(Token token) throws IOException {
+            int value = -1;
+            if(token.type.spelling == null) {
+                String text = token.getValue();
+                Integer index = strings.get(text);
+                if(index == null) {
+                    index = strings.size();
+                    strings.put(text, index);
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    table_out.writeInt(bytes.length);
+                    table_out.write(bytes);
+                }
+                value = index;
+            }
+            out.writeByte(token.type.ordinal());
+            out.writeBoolean(token.valid);
+            out.writeInt(token.line);
+            out.writeInt(token.offset);
+            out.writeInt(token.length);
+            out.writeInt(value);
+            out.writeLong(token.literal);
+            count += 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeInt(strings.size());
+                table.writeTo(out);
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(count)
+                        .putInt(HEADER_SIZE + count * RECORD_SIZE);
+                header.flip();
+                channel.write(header, 0);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Load a token file through a memory mapping. Records are copied into
+     * the stream field by field; only the distinct strings are decoded.
+     */
+    public static TokenStream read(String path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("token file is too large: " + path);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("not a token file: " + path);
+        if(buffer.getInt(4) != VERSION)
+            throw new IOException("unsupported token file version " + buffer.getInt(4) + ": " + path);
+        int count = buffer.getInt(8);
+        int table_offset = buffer.getInt(12);
+
+        buffer.position(table_offset);
+        String[] strings = new String[buffer.getInt()];
+        for(int i=0; i<strings.length; ++i) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        TokenStream tokens = new TokenStream();
+        SymbolTable symbols = tokens.getSymbols();
+        int[] symbol_ids = new int[strings.length];  // symbol id + 1 of each string.
+        int record = HEADER_SIZE;
+        for(int i=0; i<count; ++i, record += RECORD_SIZE) {
+            TokenType type = TYPES[buffer.get(record)];
+            int value = buffer.getInt(record + 14);
+            long payload = buffer.getLong(record + 18);
+            String text = null;
+            if(type == TokenType.IDENTIFIER) {
+                if(symbol_ids[value] == 0)
+                    symbol_ids[value] = symbols.intern(strings[value]) + 1;
+                payload = symbol_ids[value] - 1;
+            }
+            else if(value >= 0) {
+                text = strings[value];
+            }
+            tokens.add(type, buffer.getInt(record + 6), buffer.getInt(record + 10),
+                    buffer.getInt(record + 2), buffer.get(record + 1) != 0, payload, text);
+        }
+        return tokens;
+    }
+}
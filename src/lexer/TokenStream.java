@@ -0,0 +1,307 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * A compact list of tokens. Instead of one <code>Token</code> object per
+ * token, the fields are kept in parallel primitive arrays, and values are
+ * cut from the source only when they are asked for.
+ *
+ * The index of a token in the stream is also its number.
+ */
+public class TokenStream {
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final byte IDENTIFIER_ORDINAL = (byte) TokenType.IDENTIFIER.ordinal();
+    private static final int DEFAULT_CAPACITY = 256;
+
+    // region Properties
+
+    private SourceBuffer source;
+    private SymbolTable symbols;
+    private LineMap line_map;   // null if unknown, e.g. tokens read from xml.
+
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private long[] valid;       // bitset, one bit per token.
+    private long[] payloads;    // symbol id of identifiers, value of constants.
+    private String[] values;    // explicit values, only for tokens without source.
+
+    private int size;
+
+    // endregion
+
+    public TokenStream(SourceBuffer source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+        this.types = new byte[DEFAULT_CAPACITY];
+        this.starts = new int[DEFAULT_CAPACITY];
+        this.lengths = new int[DEFAULT_CAPACITY];
+        this.lines = new int[DEFAULT_CAPACITY];
+        this.valid = new long[(DEFAULT_CAPACITY + 63) / 64];
+        this.payloads = new long[DEFAULT_CAPACITY];
+        this.values = null;
+        this.size = 0;
+    }
+
+    /**
+     * Create a stream for tokens that carry their own values, e.g. tokens read from xml.
+     */
+    public TokenStream() {
+        this(null, new SymbolTable());
+    }
+
+    // region Append
+
+    public void add(TokenType type, int start, int length, int line, boolean valid, long payload) {
+        ensureCapacity(size + 1);
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        if(valid)
+            this.valid[size >> 6] |= 1L << size;
+        payloads[size] = payload;
+        size += 1;
+    }
+
+    /**
+     * Append a token with an explicit value, null if the value can be
+     * found without it.
+     */
+    public void add(TokenType type, int start, int length, int line, boolean valid, long payload, String value) {
+        int index = size;
+        add(type, start, length, line, valid, payload);
+        if(value != null) {
+            if(values == null)
+                values = new String[types.length];
+            values[index] = value;
+        }
+    }
+
+    public void add(Token token) {
+        long payload = -1;
+        if(token.type == TokenType.IDENTIFIER)
+            payload = symbols.intern(token.getValue());
+        else if(token.type == TokenType.INTEGER_CONSTANT || token.type == TokenType.DOUBLE_CONSTANT
+                || token.type == TokenType.CHARACTER_CONSTANT)
+            payload = token.literal;
+        String value = token.offset == -1 || source == null ? token.getValue() : null;
+        add(token.type, token.offset, token.length, token.line, token.valid, payload, value);
+    }
+
+    /**
+     * Append all the tokens of another stream over the same source.
+     * @param line_shift added to the line of every appended token.
+     * @param symbol_map maps symbol ids of <code>other</code> to ids of this stream.
+     */
+    public void append(TokenStream other, int line_shift, int[] symbol_map) {
+        int base = size;
+        int count = other.size;
+        ensureCapacity(base + count);
+
+        System.arraycopy(other.types, 0, types, base, count);
+        System.arraycopy(other.starts, 0, starts, base, count);
+        System.arraycopy(other.lengths, 0, lengths, base, count);
+        for(int i=0; i<count; ++i) {
+            lines[base + i] = other.lines[i] + line_shift;
+            if(other.valid(i))
+                valid[(base + i) >> 6] |= 1L << (base + i);
+            if(other.types[i] == IDENTIFIER_ORDINAL)
+                payloads[base + i] = symbol_map[other.symbol(i)];
+            else
+                payloads[base + i] = other.payloads[i];
+        }
+        if(other.values != null) {
+            if(values == null)
+                values = new String[types.length];
+            System.arraycopy(other.values, 0, values, base, count);
+        }
+        size += count;
+    }
+
+    /**
+     * Append tokens [from, to) of another stream that shares the symbol
+     * table of this one, moving them by the given offset and line shifts.
+     */
+    public void append(TokenStream other, int from, int to, int offset_shift, int line_shift) {
+        int base = size;
+        int count = to - from;
+        ensureCapacity(base + count);
+
+        System.arraycopy(other.types, from, types, base, count);
+        System.arraycopy(other.lengths, from, lengths, base, count);
+        System.arraycopy(other.payloads, from, payloads, base, count);
+        for(int i=0; i<count; ++i) {
+            starts[base + i] = other.starts[from + i] + offset_shift;
+            lines[base + i] = other.lines[from + i] + line_shift;
+            if(other.valid(from + i))
+                valid[(base + i) >> 6] |= 1L << (base + i);
+        }
+        if(other.values != null) {
+            if(values == null)
+                values = new String[types.length];
+            System.arraycopy(other.values, from, values, base, count);
+        }
+        size += count;
+    }
+
+    // endregion
+
+    // region Access
+
+    /**
+     * Find the first token that starts at or after given offset.
+     * @return its index, or <code>size()</code> if there is none.
+     */
+    public int indexAt(int offset) {
+        int low = 0;
+        int high = size;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(starts[mid] < offset)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public boolean valid(int index) {
+        return (valid[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Get the symbol id of the identifier at given index.
+     */
+    public int symbol(int index) {
+        return (int) payloads[index];
+    }
+
+    /**
+     * Get the value of the integer or character constant at given index.
+     */
+    public long integer(int index) {
+        return payloads[index];
+    }
+
+    /**
+     * Get the value of the double constant at given index.
+     */
+    public double real(int index) {
+        return Double.longBitsToDouble(payloads[index]);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public LineMap getLineMap() {
+        return line_map;
+    }
+
+    public void setLineMap(LineMap line_map) {
+        this.line_map = line_map;
+    }
+
+    /**
+     * Get the column of the token at given index, starting from 1.
+     * @return column, -1 if the line starts are unknown.
+     */
+    public int column(int index) {
+        if(line_map == null)
+            return -1;
+        return starts[index] - line_map.start(line_map.lineOf(starts[index])) + 1;
+    }
+
+    /**
+     * Get the source text in [begin, end).
+     * @return the text, null if the source is unknown.
+     */
+    public String text(int begin, int end) {
+        if(source == null)
+            return null;
+        return source.substring(begin, end);
+    }
+
+    /**
+     * Get the text of a line of the source, without the newline.
+     * @return the line, null if the source or its line starts are unknown.
+     */
+    public String sourceLine(int line) {
+        if(source == null || line_map == null || line > line_map.count())
+            return null;
+        int begin = line_map.start(line);
+        int end = line_map.end(line, source.getLength());
+        if(end > begin && source.charAt(end - 1) == '\r')
+            end -= 1;
+        return source.substring(begin, end);
+    }
+
+    public String value(int index) {
+        if(values != null && values[index] != null)
+            return values[index];
+        TokenType type = type(index);
+        if(type.spelling != null)
+            return type.spelling;
+        if(type == TokenType.IDENTIFIER)
+            return symbols.name(symbol(index));
+        return source.substring(starts[index], starts[index] + lengths[index]);
+    }
+
+    /**
+     * Build a <code>Token</code> object for the token at given index.
+     */
+    public Token get(int index) {
+        Token token;
+        if(values != null && values[index] != null)
+            token = new Token(index, values[index], type(index), lines[index], valid(index));
+        else
+            token = new Token(index, source, starts[index], lengths[index],
+                    type(index), lines[index], valid(index));
+        if(token.type == TokenType.IDENTIFIER) {
+            token.symbol = symbol(index);
+            token.value = symbols.name(token.symbol);
+        }
+        token.column = column(index);
+        return token;
+    }
+
+    // endregion
+
+    private void ensureCapacity(int capacity) {
+        if(capacity <= types.length)
+            return;
+        int grown = Math.max(capacity, types.length + (types.length >> 1));
+        types = Arrays.copyOf(types, grown);
+        starts = Arrays.copyOf(starts, grown);
+        lengths = Arrays.copyOf(lengths, grown);
+        lines = Arrays.copyOf(lines, grown);
+        valid = Arrays.copyOf(valid, (grown + 63) / 64);
+        payloads = Arrays.copyOf(payloads, grown);
+        if(values != null)
+            values = Arrays.copyOf(values, grown);
+    }
+}
@@ -0,0 +1,200 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read the xml written by the lexer back into a token stream, in a single
+ * pass over the input.
+ *
+ * The input is scanned line by line as bytes, each line holding at most one
+ * element. Tokens are added to the stream as soon as their closing tag is
+ * read, so only the tokens themselves are kept, never the text.
+ */
+public class XMLTokenReader {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[256];
+    private int line_length;
+    private int line_number;
+
+    // Fields of the token being read.
+    private String value;
+    private TokenType type;
+    private int token_line;
+    private boolean valid;
+    private boolean has_number;
+
+    public XMLTokenReader(InputStream in) {
+        this.in = in;
+    }
+
+    public static TokenStream read(InputStream in) throws IOException {
+        return new XMLTokenReader(in).read();
+    }
+
+    public TokenStream read() throws IOException {
+        TokenStream tokens = new TokenStream();
+        SymbolTable symbols = tokens.getSymbols();
+        while(readLine()) {
+            int begin = 0;
+            int end = line_length;
+            while(begin < end && isSpace(line[begin])) begin += 1;
+            while(end > begin && isSpace(line[end - 1])) end -= 1;
+            if(begin == end)
+                continue;
+
+            if(is(begin, end, "<token>")) {
+                value = null;
+                type = null;
+                token_line = -1;
+                valid = true;
+                has_number = false;
+            }
+            else if(is(begin, end, "</token>")) {
+                if(!has_number || value == null || type == null || token_line == -1)
+                    throw error("incomplete token");
+                long payload = -1;
+                if(type == TokenType.IDENTIFIER)
+                    payload = symbols.intern(value);
+                else if(type == TokenType.INTEGER_CONSTANT || type == TokenType.DOUBLE_CONSTANT
+                        || type == TokenType.CHARACTER_CONSTANT)
+                    payload = Lexer.literal(type, value);
+                tokens.add(type, -1, value.length(), token_line, valid, payload,
+                        type == TokenType.IDENTIFIER ? null : value);
+            }
+            else if(!is(begin, end, "<project>") && !is(begin, end, "</project>")) {
+                element(begin, end);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Read one field element <code>&lt;name&gt;content&lt;/name&gt;</code>
+     * in [begin, end) of the line. The content runs up to the closing tag at
+     * the end of the line, so values may contain anything but a newline.
+     */
+    private void element(int begin, int end) {
+        if(line[begin] != '<')
+            throw error("expect element");
+        int name_end = begin + 1;
+        while(name_end < end && line[name_end] != '>') name_end += 1;
+        int name_length = name_end - begin - 1;
+        int content_end = end - name_length - 3;
+        if(name_end == end || content_end <= name_end
+                || line[content_end] != '<' || line[content_end + 1] != '/' || line[end - 1] != '>'
+                || !regionEquals(begin + 1, content_end + 2, name_length))
+            throw error("invalid element");
+        int content = name_end + 1;
+
+        if(is(begin, name_end + 1, "<number>")) {
+            parseInt(content, content_end);
+            has_number = true;
+        }
+        else if(is(begin, name_end + 1, "<value>")) {
+            value = new String(line, content, content_end - content, StandardCharsets.UTF_8);
+        }
+        else if(is(begin, name_end + 1, "<type>")) {
+            try {
+                type = TokenType.valueOf(new String(line, content, content_end - content, StandardCharsets.US_ASCII));
+            } catch (IllegalArgumentException e) {
+                throw error("unknown token type");
+            }
+        }
+        else if(is(begin, name_end + 1, "<line>")) {
+            token_line = parseInt(content, content_end);
+        }
+        else if(is(begin, name_end + 1, "<valid>")) {
+            valid = is(content, content_end, "true");
+        }
+        else {
+            throw error("unknown element");
+        }
+    }
+
+    // region Scanning
+
+    /**
+     * Read the next line into <code>line</code>, without its line break.
+     * @return false at the end of input.
+     */
+    private boolean readLine() throws IOException {
+        line_length = 0;
+        while(true) {
+            if(position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if(limit <= 0) {
+                    limit = 0;
+                    line_number += 1;
+                    return line_length > 0;
+                }
+            }
+            byte b = buffer[position++];
+            if(b == '\n')
+                break;
+            if(line_length == line.length)
+                line = Arrays.copyOf(line, line.length * 2);
+            line[line_length++] = b;
+        }
+        if(line_length > 0 && line[line_length - 1] == '\r')
+            line_length -= 1;
+        line_number += 1;
+        return true;
+    }
+
+    private boolean is(int begin, int end, String text) {
+        if(end - begin != text.length())
+            return false;
+        for(int i=0; i<text.length(); ++i) {
+            if(line[begin + i] != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean regionEquals(int first, int second, int length) {
+        for(int i=0; i<length; ++i) {
+            if(line[first + i] != line[second + i])
+                return false;
+        }
+        return true;
+    }
+
+    private int parseInt(int begin, int end) {
+        boolean negative = begin < end && line[begin] == '-';
+        if(negative) begin += 1;
+        if(begin == end)
+            throw error("expect number");
+        long result = 0;
+        for(int i=begin; i<end; ++i) {
+            int digit = line[i] - '0';
+            if(digit < 0 || digit > 9)
+                throw error("expect number");
+            result = result * 10 + digit;
+            if(result > Integer.MAX_VALUE + 1L)
+                throw error("number out of range");
+        }
+        result = negative ? -result : result;
+        if(result > Integer.MAX_VALUE)
+            throw error("number out of range");
+        return (int) result;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("invalid xml string at line " + line_number + ": " + message);
+    }
+
+    // endregion
+}
@@ -1,58 +1,75 @@
 package main;
 
 import lexer.Lexer;
-import lexer.SourceBuffer;
+import lexer.ReaderSourceBuffer;
 import lexer.Token;
-import lexer.TokenType;
-import utils.XMLBuilder;
+import lexer.TokenFile;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 
 public class LexerRunner {
 
-    static String readFile(String path, Charset encoding) throws IOException {
-        byte[] encoded = Files.readAllBytes(Paths.get(path));
-        return new String(encoded, encoding);
-    }
-
     public static void main(String[] args) {
-        String source_path = "test/test1.c";
-        if(args.length == 0) {
+        String source_path = null;
+        boolean use_tok = false;
+        for(String arg : args) {
+            if(arg.equals("-tok"))
+                use_tok = true;
+            else if(source_path == null)
+                source_path = arg;
+        }
+        if(source_path == null) {
+            source_path = "test/test1.c";
             System.out.println("No specified source file. Use default: "+source_path);
-        } else {
-            source_path = args[0];
         }
 
-        String source = null;
-        try {
-            source = readFile(source_path, Charset.forName("utf-8"));
+        // Tokens are pulled from a streaming buffer and written out one by
+        // one, so memory does not grow with the size of the input.
+        try (ReaderSourceBuffer buff = new ReaderSourceBuffer(new InputStreamReader(
+                     new FileInputStream(source_path), StandardCharsets.UTF_8))) {
+            Lexer lexer = new Lexer(buff);
+            if(use_tok)
+                writeTok(lexer.tokens(), source_path + ".tok");
+            else
+                writeXML(lexer.tokens(), source_path + ".xml");
         } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
-        SourceBuffer buff = new SourceBuffer(source);
-
-        XMLBuilder xmlHelper = new XMLBuilder();
-        xmlHelper.append("<project>");
-        Lexer lexer = new Lexer(buff);
-        Token token = lexer.scan();
-        while (token.type != TokenType.EOF) {
-//            System.out.println(token.type + "| " + token.value + "| " + token.line);
-            xmlHelper.append(token);
-            token = lexer.scan();
+        System.out.println(use_tok ? "Generate tok success!" : "Generate xml success!");
+    }
+
+    private static void writeXML(Iterator<Token> tokens, String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(path), StandardCharsets.UTF_8)))) {
+            out.println("<project>");
+            while (tokens.hasNext()) {
+                Token token = tokens.next();
+//                System.out.println(token.type + "| " + token.getValue() + "| " + token.line);
+                out.print(token.toXMLString(1));
+            }
+            out.println("</project>");
+            out.println();
+
+            System.out.println("Finish!");
+            System.out.println("Generate xml...");
         }
-        xmlHelper.append("</project>");
-        
-        System.out.println("Finish!");
-        System.out.println("Generate xml...");
-        try {
-            xmlHelper.generate(source_path+".xml");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    }
+
+    private static void writeTok(Iterator<Token> tokens, String path) throws IOException {
+        try (TokenFile.Writer out = new TokenFile.Writer(path)) {
+            while (tokens.hasNext())
+                out.write(tokens.next());
+            System.out.println("Finish!");
+            System.out.println("Generate tok...");
         }
-        System.out.println("Generate xml success!");
     }
 }
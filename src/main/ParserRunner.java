@@ -4,95 +4,143 @@ import ast.StmtNode;
 import ast.XMLPrinter;
 import error.ErrorCollector;
 import lexer.Lexer;
+import lexer.MappedSourceBuffer;
+import lexer.ParallelLexer;
 import lexer.SourceBuffer;
-import lexer.Token;
-import lexer.TokenType;
+import lexer.TokenFile;
+import lexer.TokenStream;
+import lexer.XMLTokenReader;
+import parser.ParallelParser;
 import parser.Parser;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Vector;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class ParserRunner {
 
-    String readFile(String path, Charset encoding) throws IOException {
-        byte[] encoded = Files.readAllBytes(Paths.get(path));
-        return new String(encoded, encoding);
-    }
-
-    Vector<Token> readTokensFromXML(String path) {
-        Vector<Token> tokens = new Vector<>();
-
-        String xml = null;
-        try {
-            xml = readFile(path, Charset.forName("utf-8"));
+    TokenStream readTokensFromXML(String path) {
+        try (InputStream in = new FileInputStream(path)) {
+            return XMLTokenReader.read(in);
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
-
-        String[] lines = xml.split("\n");
-        for(int i=1; i<lines.length-1; i+=7) {
-            tokens.add(Token.fromXML(Arrays.copyOfRange(lines, i, i+6)));
-        }
-
-        return tokens;
     }
 
-    void run(String source_path, String out, boolean use_xml) {
+    void run(String source_path, String out, boolean use_xml, boolean use_tok, int threads, boolean memoize, boolean iterative) {
         File f = new File(source_path);
         String file_name = f.getName();
         if(out == null) out = file_name;
 
-        String source = null;
-        try {
-            source = readFile(source_path, Charset.forName("utf-8"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
         ErrorCollector errorCollector = ErrorCollector.getInstance();
         errorCollector.setFile_name(file_name);
 
-        Vector<Token> tokens = new Vector<>();
+        // Lexing and parsing share the threads asked for.
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        TokenStream tokens;
         if(use_xml) {
             tokens = readTokensFromXML(source_path);
+            if(tokens == null)
+                return;
+        } else if(use_tok) {
+            try {
+                tokens = TokenFile.read(source_path);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
         } else {
-            SourceBuffer buff = new SourceBuffer(source);
-            Lexer lexer = new Lexer(buff);
-            Token token = lexer.scan();
-            while (token.type != TokenType.EOF) {
-                tokens.add(token);
-                token = lexer.scan();
+            SourceBuffer buff;
+            try {
+                buff = new MappedSourceBuffer(source_path);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            if(threads > 1) {
+                tokens = new ParallelLexer(pool, threads).scanAll(buff);
+            } else {
+                Lexer lexer = new Lexer(buff);
+                tokens = lexer.scanAll();
             }
         }
 
-        Parser parser = new Parser(tokens);
-        StmtNode.CompilationUnit tree = parser.parse();
+        // Each declaration is printed as soon as it is parsed, and then
+        // dropped, so the tree is never held in memory as a whole. It goes
+        // to a temporary file, which replaces the tree file only if the
+        // parse succeeds.
+        String tree_path = source_path + "_tree.xml";
+        File tree_file = new File(tree_path).getAbsoluteFile();
+        File temp_file;
+        PrintWriter writer;
+        try {
+            temp_file = File.createTempFile(tree_file.getName(), ".tmp", tree_file.getParentFile());
+            writer = new PrintWriter(temp_file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        XMLPrinter printer = new XMLPrinter();
+        boolean[] too_deep = new boolean[1];
+        Consumer<StmtNode.Declaration> consumer = declaration -> {
+            if(too_deep[0] || errorCollector.hasError())
+                return;
+            try {
+                writer.print(printer.print(declaration));
+            } catch (StackOverflowError e) {
+                // The printer is still recursive.
+                too_deep[0] = true;
+            }
+        };
+
+        writer.print(printer.printBegin());
+        if(threads > 1) {
+            ParallelParser parser = new ParallelParser(pool);
+            parser.setMemoize(memoize);
+            parser.setIterative(iterative);
+            parser.parse(tokens, consumer);
+        } else {
+            Parser parser = new Parser(tokens);
+            parser.setMemoize(memoize);
+            parser.setIterative(iterative);
+            parser.parse(consumer);
+        }
+        writer.println(printer.printEnd());
+        writer.close();
 
         if(errorCollector.hasError()) {
+            temp_file.delete();
             errorCollector.show();
             return;
         }
 
         System.out.println(file_name + " is successfully parsed!");
-        XMLPrinter printer = new XMLPrinter();
-        String xml = printer.print(tree);
-
-        PrintWriter writer;
+        if(too_deep[0]) {
+            temp_file.delete();
+            System.out.println("AST is too deeply nested to be printed.");
+            return;
+        }
+        if(writer.checkError()) {
+            temp_file.delete();
+            System.out.println("Failed to write " + tree_path + ".");
+            return;
+        }
         try {
-            writer = new PrintWriter(source_path+"_tree.xml");
-            writer.println(xml);
-            writer.close();
-            System.out.println("AST in XML format is saved at " + source_path + "_tree.xml.");
-        } catch (FileNotFoundException e) {
+            Files.move(temp_file.toPath(), tree_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp_file.delete();
             e.printStackTrace();
+            return;
         }
+        System.out.println("AST in XML format is saved at " + tree_path + ".");
     }
 
     static void printUsage() {
@@ -100,6 +148,10 @@ public class ParserRunner {
                 "USAGE: parser [options] <inputs>\n\n" +
                 "OPTIONS:\n" +
                 "\t-xml    \tUse xml as input.\n" +
+                "\t-tok    \tUse binary tokens as input.\n" +
+                "\t-j <n>   \tLex and parse with <n> threads.\n" +
+                "\t-memo   \tMemoize expression rules.\n" +
+                "\t-iter   \tParse without recursion, for deeply nested input.\n" +
                 "\t-o <file>\tWrite output to <file>.xml";
         System.out.println(usage);
     }
@@ -108,6 +160,10 @@ public class ParserRunner {
         String source = null;
         String out = null;
         boolean use_xml = false;
+        boolean use_tok = false;
+        boolean memoize = false;
+        boolean iterative = false;
+        int threads = 1;
 
         if(args.length == 0) {
             printUsage();
@@ -117,9 +173,21 @@ public class ParserRunner {
                 if(args[i].equals("-o")) {
                     out = args[i+1];
                     i++;
+                } else if(args[i].equals("-j")) {
+                    threads = Integer.parseInt(args[i+1]);
+                    i += 2;
                 } else if(args[i].equals("-xml")) {
                     use_xml = true;
                     i++;
+                } else if(args[i].equals("-tok")) {
+                    use_tok = true;
+                    i++;
+                } else if(args[i].equals("-memo")) {
+                    memoize = true;
+                    i++;
+                } else if(args[i].equals("-iter")) {
+                    iterative = true;
+                    i++;
                 } else {
                     if(source == null)
                         source = args[i];
@@ -129,6 +197,6 @@ public class ParserRunner {
         }
 
         ParserRunner runner = new ParserRunner();
-        runner.run(source, out, use_xml);
+        runner.run(source, out, use_xml, use_tok, threads, memoize, iterative);
     }
 }
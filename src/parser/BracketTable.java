@@ -0,0 +1,141 @@
+package parser;
+
+import lexer.TokenStream;
+import lexer.TokenType;
+
+import java.util.Arrays;
+
+/**
+ * The matching bracket of every parenthesis, square bracket and brace in
+ * a token stream, found in a single pass.
+ *
+ * Each kind of bracket is matched on its own, ignoring the other kinds,
+ * so `( [ ) ]` pairs up the parentheses and the square brackets.
+ */
+public class BracketTable {
+
+    private final int[] pair;       // index of the matching bracket, -1 if unmatched or not a bracket.
+    private final int[] mismatches; // indices of unmatched brackets, in order.
+
+    public BracketTable(TokenStream tokens) {
+        int size = tokens.size();
+        pair = new int[size];
+        Arrays.fill(pair, -1);
+
+        int[][] stacks = new int[3][16];
+        int[] depths = new int[3];
+        int[] unmatched = new int[16];
+        int count = 0;
+
+        for(int i=0; i<size; ++i) {
+            TokenType type = tokens.type(i);
+            int kind = kind(type);
+            if(kind < 0)
+                continue;
+            if(isLeft(type)) {
+                if(depths[kind] == stacks[kind].length)
+                    stacks[kind] = Arrays.copyOf(stacks[kind], depths[kind] * 2);
+                stacks[kind][depths[kind]++] = i;
+            }
+            else if(depths[kind] > 0) {
+                int left = stacks[kind][--depths[kind]];
+                pair[left] = i;
+                pair[i] = left;
+            }
+            else {
+                if(count == unmatched.length)
+                    unmatched = Arrays.copyOf(unmatched, count * 2);
+                unmatched[count++] = i;
+            }
+        }
+        for(int kind=0; kind<3; ++kind) {
+            for(int d=0; d<depths[kind]; ++d) {
+                if(count == unmatched.length)
+                    unmatched = Arrays.copyOf(unmatched, count * 2);
+                unmatched[count++] = stacks[kind][d];
+            }
+        }
+        mismatches = Arrays.copyOf(unmatched, count);
+        Arrays.sort(mismatches);
+    }
+
+    /**
+     * Get the index of the bracket that matches the one at given index.
+     * @return -1 if it is unmatched, or not a bracket.
+     */
+    public int pair(int index) {
+        return pair[index];
+    }
+
+    /**
+     * Find where the external declaration starting at index ends: after the
+     * first ';' outside of brackets, or after the '}' that closes a body.
+     * @return the index after it, at most end, or -1 if an unmatched
+     *         bracket is in the way.
+     */
+    public int declarationEnd(TokenStream tokens, int index, int end) {
+        while(index < end) {
+            TokenType type = tokens.type(index);
+            if(isLeft(type)) {
+                if(pair[index] < 0)
+                    return -1;
+                index = pair[index] + 1;
+                if(type == TokenType.LEFT_BRACE)
+                    break;
+            } else {
+                if(kind(type) >= 0 && pair[index] < 0)
+                    return -1;
+                index += 1;
+                if(type == TokenType.SEMICOLON)
+                    break;
+            }
+        }
+        return Math.min(index, end);
+    }
+
+    /**
+     * Get the indices of all the unmatched brackets, in source order.
+     */
+    public int[] getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * Whether one of the brackets in [begin, end) is unmatched.
+     */
+    public boolean hasMismatch(int begin, int end) {
+        int at = Arrays.binarySearch(mismatches, begin);
+        if(at < 0)
+            at = -at - 1;
+        return at < mismatches.length && mismatches[at] < end;
+    }
+
+    /**
+     * Whether a bracket before index is unmatched, and lacks a pair of
+     * the given type.
+     */
+    public boolean hasUnmatched(TokenStream tokens, TokenType right, int index) {
+        int kind = kind(right);
+        if(kind < 0 || isLeft(right))
+            return false;
+        for(int i=0; i<mismatches.length && mismatches[i] < index; ++i) {
+            TokenType type = tokens.type(mismatches[i]);
+            if(kind(type) == kind && isLeft(type))
+                return true;
+        }
+        return false;
+    }
+
+    private static int kind(TokenType type) {
+        switch (type) {
+            case LEFT_PAREN: case RIGHT_PAREN: return 0;
+            case LEFT_BRACKET: case RIGHT_BRACKET: return 1;
+            case LEFT_BRACE: case RIGHT_BRACE: return 2;
+            default: return -1;
+        }
+    }
+
+    private static boolean isLeft(TokenType type) {
+        return type == TokenType.LEFT_PAREN || type == TokenType.LEFT_BRACKET || type == TokenType.LEFT_BRACE;
+    }
+}
@@ -0,0 +1,534 @@
+package parser;
+
+import ast.DeclNode;
+import ast.ExprNode;
+import ast.StmtNode;
+import error.ParserError;
+import lexer.Token;
+import lexer.TokenStream;
+import lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.Vector;
+
+import static lexer.TokenType.*;
+
+/**
+ * Parse statements and expressions with work stacks on the heap instead of
+ * the call stack, so that nesting depth is bounded only by memory.
+ *
+ * It accepts exactly what the recursive rules of {@link Parser} accept and
+ * builds the same tree, but it never reports errors: on any unexpected
+ * token it gives up and returns null, and the caller parses the same
+ * external declaration again with the recursive rules to get the errors.
+ * Declarators are still parsed by the recursive rules, their nesting is
+ * shallow in practice.
+ */
+class IterativeParser {
+
+    private final Parser parser;
+    private final TokenStream tokens;
+    private final BracketTable brackets;
+
+    IterativeParser(Parser parser, TokenStream tokens, BracketTable brackets) {
+        this.parser = parser;
+        this.tokens = tokens;
+        this.brackets = brackets;
+    }
+
+    /**
+     * Parse a declaration or a function definition at index.
+     * @return the declaration, with <code>parser.last_index</code> after it,
+     *         or null if it does not parse.
+     */
+    StmtNode.Declaration parseExternalDeclaration(int index) {
+        Vector<Token> specs = specifiers(index);
+        if(specs == null)
+            return null;
+        index += 1;
+        if(check(index, SEMICOLON)) {
+            parser.last_index = index + 1;
+            return new StmtNode.Declaration(new DeclNode.Root(specs), null);
+        }
+
+        DeclNode decl = declarator(index);
+        if(decl == null)
+            return null;
+        if(!check(parser.last_index, LEFT_BRACE))
+            return parseDeclaration(specs, decl, parser.last_index);
+
+        StmtNode body = parseStatement(parser.last_index);
+        if(body == null)
+            return null;
+        return new StmtNode.Declaration(new DeclNode.Root(specs, decl), (StmtNode.Compound) body);
+    }
+
+    // region Statement
+
+    private static final int BLOCK = 0;
+    private static final int THEN_PART = 1;
+    private static final int ELSE_PART = 2;
+    private static final int LOOP = 3;
+
+    // A statement waiting for its parts.
+    private static class Frame {
+        int kind;
+        int right;              // index of the closing brace of a compound.
+        Vector<StmtNode> items; // items of a compound.
+        ExprNode cond;
+        StmtNode body;          // body of the if, while the else part is parsed.
+
+        Frame(int kind) {
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * Parse the statement at index, with every nested statement pushed as a
+     * frame that is completed once its last part is parsed.
+     */
+    private StmtNode parseStatement(int index) {
+        ArrayList<Frame> frames = new ArrayList<>();
+
+        while(true) {
+            StmtNode done;
+            Frame top = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+            if(isAtEnd(index))
+                return null;
+
+            if(top != null && top.kind == BLOCK && tokens.type(index) == RIGHT_BRACE) {
+                if(index != top.right)
+                    return null;
+                frames.remove(frames.size() - 1);
+                done = new StmtNode.Compound(top.items);
+                index += 1;
+            }
+            else if(top != null && top.kind == BLOCK && isSpecifier(index)) {
+                Vector<Token> specs = specifiers(index);
+                StmtNode.Declaration decl = parseDeclaration(specs, null, index + 1);
+                if(decl == null)
+                    return null;
+                top.items.add(decl);
+                index = parser.last_index;
+                continue;
+            }
+            else {
+                switch (tokens.type(index)) {
+                    case IF:
+                    case WHILE: {
+                        if(!check(index + 1, LEFT_PAREN))
+                            return null;
+                        ExprNode cond = parseExpression(index + 2);
+                        if(cond == null || !check(parser.last_index, RIGHT_PAREN))
+                            return null;
+                        Frame frame = new Frame(tokens.type(index) == IF ? THEN_PART : LOOP);
+                        frame.cond = cond;
+                        frames.add(frame);
+                        index = parser.last_index + 1;
+                        continue;
+                    }
+                    case LEFT_BRACE: {
+                        Frame frame = new Frame(BLOCK);
+                        frame.right = brackets.pair(index);
+                        if(frame.right < 0)
+                            return null;
+                        frame.items = new Vector<>();
+                        frames.add(frame);
+                        index += 1;
+                        continue;
+                    }
+                    case RETURN: {
+                        ExprNode value = null;
+                        index += 1;
+                        if(!check(index, SEMICOLON)) {
+                            value = parseExpression(index);
+                            if(value == null)
+                                return null;
+                            index = parser.last_index;
+                        }
+                        if(!check(index, SEMICOLON))
+                            return null;
+                        done = new StmtNode.Return(value);
+                        index += 1;
+                        break;
+                    }
+                    case BREAK:
+                    case CONTINUE:
+                        if(!check(index + 1, SEMICOLON))
+                            return null;
+                        done = tokens.type(index) == BREAK ? new StmtNode.Break() : new StmtNode.Continue();
+                        index += 2;
+                        break;
+                    case SEMICOLON:
+                        done = new StmtNode.Empty();
+                        index += 1;
+                        break;
+                    default: {
+                        ExprNode expr = parseExpression(index);
+                        if(expr == null || !check(parser.last_index, SEMICOLON))
+                            return null;
+                        done = new StmtNode.Expression(expr);
+                        index = parser.last_index + 1;
+                        break;
+                    }
+                }
+            }
+
+            // Hand the finished statement to the frames waiting for it.
+            while(true) {
+                if(frames.isEmpty()) {
+                    parser.last_index = index;
+                    return done;
+                }
+                top = frames.get(frames.size() - 1);
+                if(top.kind == BLOCK) {
+                    top.items.add(done);
+                    break;
+                }
+                if(top.kind == THEN_PART && check(index, ELSE)) {
+                    top.kind = ELSE_PART;
+                    top.body = done;
+                    index += 1;
+                    break;
+                }
+                frames.remove(frames.size() - 1);
+                if(top.kind == THEN_PART)
+                    done = new StmtNode.If(top.cond, done, null);
+                else if(top.kind == ELSE_PART)
+                    done = new StmtNode.If(top.cond, top.body, done);
+                else
+                    done = new StmtNode.While(top.cond, done);
+            }
+        }
+    }
+
+    /**
+     * The rest of a declaration after its specifiers, and after its first
+     * declarator if that is already parsed.
+     */
+    private StmtNode.Declaration parseDeclaration(Vector<Token> specs, DeclNode first, int index) {
+        Vector<DeclNode> decls = new Vector<>();
+        Vector<ExprNode> inits = new Vector<>();
+
+        while(true) {
+            DeclNode node = first;
+            first = null;
+            if(node == null) {
+                node = declarator(index);
+                if(node == null)
+                    return null;
+            }
+            index = parser.last_index;
+            decls.add(node);
+
+            if(check(index, ASSIGN)) {
+                ExprNode expr = parseExpression(index + 1);
+                if(expr == null)
+                    return null;
+                index = parser.last_index;
+                inits.add(expr);
+            } else {
+                inits.add(null);
+            }
+
+            if(check(index, COMMA))
+                index += 1;
+            else
+                break;
+        }
+        if(!check(index, SEMICOLON))
+            return null;
+        parser.last_index = index + 1;
+        return new StmtNode.Declaration(new DeclNode.Root(specs, decls, inits), null);
+    }
+
+    // endregion
+
+    // region Expression
+
+    // Operators waiting for their operands.
+    private static final int PREFIX = 0;
+    private static final int CAST = 1;
+    private static final int BINARY = 2;
+    private static final int ASSIGNMENT = 3;
+    private static final int GROUP = 4;
+
+    // Kinds of group, the brackets an expression is nested in.
+    private static final int TOP = 0;
+    private static final int PAREN = 1;
+    private static final int SUBSCRIPT = 2;
+    private static final int CALL = 3;
+
+    private static class Op {
+        int kind;
+        TokenType type;
+        Vector<Token> specs;    // type of a cast.
+
+        // For a group: what it is, its arguments if it is a call, and
+        // whether the <assignment-expression> parsed in it so far may still
+        // turn out to be the left side of an assignment.
+        int group;
+        Op outer;               // the enclosing group.
+        Vector<ExprNode> args;
+        boolean assignable;
+        boolean fresh;          // nothing is parsed in the assignment yet.
+
+        Op(int kind, TokenType type) {
+            this.kind = kind;
+            this.type = type;
+        }
+
+        static Op group(int group, Op outer) {
+            Op op = new Op(GROUP, null);
+            op.group = group;
+            op.outer = outer;
+            op.assignable = true;
+            op.fresh = true;
+            return op;
+        }
+    }
+
+    /**
+     * Parse an <assignment-expression> at index by operator precedence, with
+     * an operand stack and an operator stack.
+     * @return the expression, with <code>parser.last_index</code> after it,
+     *         or null if it does not parse.
+     */
+    private ExprNode parseExpression(int index) {
+        ArrayList<ExprNode> operands = new ArrayList<>();
+        ArrayList<Op> ops = new ArrayList<>();
+        Op group = Op.group(TOP, null);
+        ops.add(group);
+
+        boolean operand = true;     // an operand is expected next.
+        boolean called = false;     // the operand ends with a call, no more postfix.
+
+        while(true) {
+            if(operand) {
+                if(isAtEnd(index))
+                    return null;
+                TokenType type = tokens.type(index);
+                switch (type) {
+                    case REL_NOT:
+                    case ADD:
+                    case SUB:
+                        ops.add(new Op(PREFIX, type));
+                        group.fresh = false;
+                        index += 1;
+                        break;
+                    case LEFT_PAREN:
+                        if(isSpecifier(index + 1)) {
+                            if(!check(index + 2, RIGHT_PAREN))
+                                return null;
+                            Op cast = new Op(CAST, null);
+                            cast.specs = specifiers(index + 1);
+                            ops.add(cast);
+                            // An assignment never starts with a cast.
+                            if(group.fresh)
+                                group.assignable = false;
+                            group.fresh = false;
+                            index += 3;
+                        } else {
+                            group.fresh = false;
+                            group = Op.group(PAREN, group);
+                            ops.add(group);
+                            index += 1;
+                        }
+                        break;
+                    case IDENTIFIER:
+                        operands.add(new ExprNode.Identifier(tokens.value(index), tokens.symbol(index)));
+                        group.fresh = false;
+                        operand = false;
+                        called = false;
+                        index += 1;
+                        break;
+                    case INTEGER_CONSTANT:
+                    case CHARACTER_CONSTANT:
+                    case DOUBLE_CONSTANT:
+                        operands.add(parser.number(index));
+                        group.fresh = false;
+                        operand = false;
+                        called = false;
+                        index += 1;
+                        break;
+                    case STRING:
+                        operands.add(new ExprNode.StringExpr(tokens.value(index)));
+                        group.fresh = false;
+                        operand = false;
+                        called = false;
+                        index += 1;
+                        break;
+                    default:
+                        return null;
+                }
+                continue;
+            }
+
+            TokenType type = isAtEnd(index) ? null : tokens.type(index);
+
+            // Postfix operators apply to the operand itself, before any
+            // prefix operator or cast in front of it.
+            if(!called && type == LEFT_BRACKET) {
+                group = Op.group(SUBSCRIPT, group);
+                ops.add(group);
+                operand = true;
+                index += 1;
+                continue;
+            }
+            if(!called && type == LEFT_PAREN) {
+                if(check(index + 1, RIGHT_PAREN)) {
+                    ExprNode func = operands.remove(operands.size() - 1);
+                    operands.add(new ExprNode.FunCall(func, new Vector<>()));
+                    called = true;
+                    index += 2;
+                    continue;
+                }
+                group = Op.group(CALL, group);
+                group.args = new Vector<>();
+                ops.add(group);
+                operand = true;
+                index += 1;
+                continue;
+            }
+
+            int power = type == null ? 0 : Parser.binding_power[type.ordinal()];
+            if(power > 0) {
+                // Operators are left associative: fold everything that binds
+                // at least as tight first.
+                while(true) {
+                    Op top = ops.get(ops.size() - 1);
+                    if(top.kind == GROUP || top.kind == ASSIGNMENT
+                            || top.kind == BINARY && Parser.binding_power[top.type.ordinal()] < power)
+                        break;
+                    reduce(ops, operands);
+                }
+                ops.add(new Op(BINARY, type));
+                group.assignable = false;
+                operand = true;
+                index += 1;
+                continue;
+            }
+
+            if(group.assignable && isAssignment(type)) {
+                while(ops.get(ops.size() - 1).kind != GROUP && ops.get(ops.size() - 1).kind != ASSIGNMENT)
+                    reduce(ops, operands);
+                ops.add(new Op(ASSIGNMENT, type));
+                group.fresh = true;
+                operand = true;
+                index += 1;
+                continue;
+            }
+
+            // The expression of the innermost group ends here.
+            while(ops.get(ops.size() - 1).kind != GROUP)
+                reduce(ops, operands);
+            switch (group.group) {
+                case TOP:
+                    parser.last_index = index;
+                    return operands.get(0);
+                case PAREN:
+                    if(type != RIGHT_PAREN)
+                        return null;
+                    called = false;
+                    break;
+                case SUBSCRIPT: {
+                    if(type != RIGHT_BRACKET)
+                        return null;
+                    ExprNode sub = operands.remove(operands.size() - 1);
+                    ExprNode array = operands.remove(operands.size() - 1);
+                    operands.add(new ExprNode.ArraySub(array, sub));
+                    called = false;
+                    break;
+                }
+                default:
+                    group.args.add(operands.remove(operands.size() - 1));
+                    if(type == COMMA) {
+                        group.assignable = true;
+                        group.fresh = true;
+                        operand = true;
+                        index += 1;
+                        continue;
+                    }
+                    if(type != RIGHT_PAREN)
+                        return null;
+                    ExprNode func = operands.remove(operands.size() - 1);
+                    operands.add(new ExprNode.FunCall(func, group.args));
+                    called = true;
+                    break;
+            }
+            ops.remove(ops.size() - 1);
+            group = group.outer;
+            index += 1;
+        }
+    }
+
+    /**
+     * Apply the operator on top of the stack to its operands.
+     */
+    private static void reduce(ArrayList<Op> ops, ArrayList<ExprNode> operands) {
+        Op op = ops.remove(ops.size() - 1);
+        ExprNode right = operands.remove(operands.size() - 1);
+        switch (op.kind) {
+            case PREFIX:
+                if(op.type == REL_NOT)
+                    operands.add(new ExprNode.LogicalNot(right));
+                else if(op.type == ADD)
+                    operands.add(new ExprNode.UnaryPlus(right));
+                else
+                    operands.add(new ExprNode.UnaryMinus(right));
+                break;
+            case CAST:
+                operands.add(new ExprNode.Cast(op.specs, right));
+                break;
+            case BINARY: {
+                ExprNode left = operands.remove(operands.size() - 1);
+                operands.add(Parser.makeBinary(op.type, left, right));
+                break;
+            }
+            default: {
+                ExprNode left = operands.remove(operands.size() - 1);
+                operands.add(Parser.makeAssign(op.type, left, right));
+                break;
+            }
+        }
+    }
+
+    private static boolean isAssignment(TokenType type) {
+        return type == ASSIGN || type == ADD_ASSIGN || type == SUB_ASSIGN
+                || type == MULTI_ASSIGN || type == DIV_ASSIGN;
+    }
+
+    // endregion
+
+    // region Function Relates Tokens
+
+    private Vector<Token> specifiers(int index) {
+        try {
+            return parser.parseDeclSpecifiers(index);
+        } catch (ParserError parserError) {
+            return null;
+        }
+    }
+
+    private DeclNode declarator(int index) {
+        try {
+            return parser.parseDeclarator(index);
+        } catch (ParserError parserError) {
+            return null;
+        }
+    }
+
+    private boolean check(int index, TokenType type) {
+        return !isAtEnd(index) && tokens.type(index) == type;
+    }
+
+    private boolean isSpecifier(int index) {
+        return check(index, INT) || check(index, DOUBLE) || check(index, CHAR) || check(index, VOID);
+    }
+
+    private boolean isAtEnd(int index) {
+        return parser.isAtEnd(index);
+    }
+
+    // endregion
+}
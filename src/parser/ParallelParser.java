@@ -0,0 +1,161 @@
+package parser;
+
+import ast.StmtNode;
+import error.ErrorCollector;
+import lexer.TokenStream;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Parse the external declarations of a token stream on several threads.
+ *
+ * A fast pre-scan over the bracket table finds where each declaration
+ * ends: at the first ';' outside of brackets, or at the '}' that closes a
+ * function body. Consecutive declarations are grouped into tasks of about
+ * <code>MIN_TASK</code> tokens, each parsed by its own parser with its own
+ * error collector. The declarations are joined in source order.
+ *
+ * With unmatched brackets the boundaries cannot be trusted, and the whole
+ * stream is parsed sequentially. Brackets of broken code may also pair
+ * across declarations, so from the first task with errors on, the rest of
+ * the stream is parsed sequentially too, and the result is always that of
+ * one <code>Parser</code>.
+ */
+public class ParallelParser {
+
+    // Tasks smaller than this are not worth a thread.
+    private static final int MIN_TASK = 2048;
+
+    private final ForkJoinPool pool;
+    private final ErrorCollector errorCollector;
+    private boolean memoize;
+    private boolean iterative;
+
+    public ParallelParser(ForkJoinPool pool) {
+        this(pool, ErrorCollector.getInstance());
+    }
+
+    /**
+     * Report errors to a collector of its own, see <code>Parser</code>.
+     */
+    public ParallelParser(ForkJoinPool pool, ErrorCollector errorCollector) {
+        this.pool = pool;
+        this.errorCollector = errorCollector;
+    }
+
+    public ParallelParser() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * See <code>Parser.setMemoize</code>.
+     */
+    public void setMemoize(boolean memoize) {
+        this.memoize = memoize;
+    }
+
+    /**
+     * See <code>Parser.setIterative</code>.
+     */
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative;
+    }
+
+    public StmtNode.CompilationUnit parse(TokenStream tokens) {
+        Vector<StmtNode.Declaration> items = new Vector<>();
+        return parse(tokens, items::add) ? new StmtNode.CompilationUnit(items) : null;
+    }
+
+    /**
+     * Parse the tokens, handing the external declarations to
+     * <code>consumer</code> in source order, on the calling thread. Only a
+     * few tasks per thread are parsed ahead of the consumer, so the
+     * declarations waiting for it stay bounded.
+     * @return false if the tokens could not be parsed to their end.
+     */
+    public boolean parse(TokenStream tokens, Consumer<StmtNode.Declaration> consumer) {
+        BracketTable brackets = new BracketTable(tokens);
+        int[] bounds = split(tokens, brackets);
+        int count = bounds.length - 1;
+        if(count <= 1 || brackets.getMismatches().length > 0)
+            return newParser(tokens, brackets, 0, tokens.size(), errorCollector).parse(consumer);
+
+        int ahead = 2 * pool.getParallelism();
+        ArrayDeque<ForkJoinTask<Task>> tasks = new ArrayDeque<>();
+        int submitted = 0;
+        while(submitted < count || !tasks.isEmpty()) {
+            while(submitted < count && tasks.size() < ahead) {
+                final int begin = bounds[submitted];
+                final int end = bounds[submitted + 1];
+                tasks.add(pool.submit(() -> {
+                    ErrorCollector errors = new ErrorCollector();
+                    StmtNode.CompilationUnit unit = newParser(tokens, brackets, begin, end, errors).parse();
+                    return new Task(begin, unit, errors);
+                }));
+                submitted += 1;
+            }
+
+            Task result = tasks.poll().join();
+            if(result.unit == null || result.errors.hasError()) {
+                // The tasks before parsed cleanly, so this one starts at a
+                // declaration the sequential parse would start at too.
+                tasks.forEach(task -> task.cancel(false));
+                return newParser(tokens, brackets, result.begin, tokens.size(), errorCollector).parse(consumer);
+            }
+            result.unit.getNodes().forEach(consumer);
+        }
+        return true;
+    }
+
+    private Parser newParser(TokenStream tokens, BracketTable brackets, int begin, int end, ErrorCollector errors) {
+        Parser parser = new Parser(tokens, brackets, begin, end, errors);
+        parser.setMemoize(memoize);
+        parser.setIterative(iterative);
+        return parser;
+    }
+
+    /**
+     * Cut the tokens after external declarations, into pieces of at least
+     * <code>MIN_TASK</code> tokens but the last.
+     * @return boundaries, task i parses [bounds[i], bounds[i+1]).
+     */
+    private static int[] split(TokenStream tokens, BracketTable brackets) {
+        int size = tokens.size();
+        int[] bounds = new int[16];
+        int n = 1;
+
+        int index = 0;
+        while(index < size) {
+            index = brackets.declarationEnd(tokens, index, size);
+            if(index < 0)
+                return new int[] {0, size};
+
+            if(index - bounds[n-1] >= MIN_TASK && index < size) {
+                if(n == bounds.length)
+                    bounds = Arrays.copyOf(bounds, n * 2);
+                bounds[n++] = index;
+            }
+        }
+        if(n == bounds.length)
+            bounds = Arrays.copyOf(bounds, n + 1);
+        bounds[n] = size;
+        return Arrays.copyOf(bounds, n + 1);
+    }
+
+    private static class Task {
+        final int begin;
+        final StmtNode.CompilationUnit unit;
+        final ErrorCollector errors;
+
+        Task(int begin, StmtNode.CompilationUnit unit, ErrorCollector errors) {
+            this.begin = begin;
+            this.unit = unit;
+            this.errors = errors;
+        }
+    }
+}
@@ -6,10 +6,16 @@ import ast.StmtNode;
 import error.ErrorCollector;
 import error.ParserError;
 import lexer.Token;
+import lexer.TokenEdit;
+import lexer.TokenStream;
 import lexer.TokenType;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 import static lexer.TokenType.*;
 import static error.ParserError.ErrorType.*;
@@ -17,33 +23,215 @@ import static error.ParserError.ErrorType.*;
 public class Parser {
     // region Properties
 
-    private List<Token> tokens;
-    private int last_index;
+    private TokenStream tokens;
+    private int begin;
+    private int end;            // tokens from end on are not parsed.
+    int last_index;
     private ErrorCollector errorCollector = ErrorCollector.getInstance();
 
+    private BracketTable brackets;
+    private boolean memoize;
+    private IterativeParser iterative;
+    private IterativeParser deep;   // for declarations nested too deep, see enter.
+    private int depth;              // nesting depth of the rules being parsed.
+
+    // Token objects built for the external declaration being parsed.
+    private Vector<Token> item_tokens = new Vector<>();
+
     // endregion
 
-    public Parser(List<Token> tokens) {
+    public Parser(TokenStream tokens) {
+        this(tokens, ErrorCollector.getInstance());
+    }
+
+    /**
+     * Report errors to a collector of its own, e.g. one per version of an
+     * edited source, see <code>reparse</code>.
+     */
+    public Parser(TokenStream tokens, ErrorCollector errorCollector) {
+        this(tokens, new BracketTable(tokens), 0, tokens.size(), errorCollector);
+    }
+
+    /**
+     * Parse only the external declarations in [begin, end) of the tokens.
+     */
+    Parser(TokenStream tokens, BracketTable brackets, int begin, int end, ErrorCollector errorCollector) {
         this.tokens = tokens;
+        this.brackets = brackets;
+        this.begin = begin;
+        this.end = end;
+        this.errorCollector = errorCollector;
+    }
+
+    /**
+     * Remember the result of the backtracking expression rules at every
+     * position, so that none of them is parsed twice at the same place.
+     * It costs memory linear in the number of tokens, and keeps deeply
+     * parenthesized expressions from being parsed an exponential number
+     * of times.
+     */
+    public void setMemoize(boolean memoize) {
+        this.memoize = memoize;
+    }
+
+    /**
+     * Parse statements and expressions with work stacks on the heap, so
+     * that deeply nested input does not overflow the call stack. A
+     * declaration with errors is parsed again by the recursive rules to
+     * report them.
+     */
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative ? new IterativeParser(this, tokens, brackets) : null;
     }
 
     public StmtNode.CompilationUnit parse() {
+        reportMismatches();
+        return parseFrom(begin);
+    }
+
+    /**
+     * Parse the tokens, handing each external declaration to
+     * <code>consumer</code> as soon as it is parsed instead of collecting
+     * them into a compilation unit. The parser keeps no reference to a
+     * declaration once it is handed over, so a consumer that prints and
+     * drops them parses a file of any length with memory for the tokens
+     * and a single declaration.
+     * @return false if the parse stopped before the end of the tokens, the
+     *         declarations before that point have been handed over.
+     */
+    public boolean parse(Consumer<StmtNode.Declaration> consumer) {
+        reportMismatches();
+        return parseFrom(begin, consumer);
+    }
+
+    private StmtNode.CompilationUnit parseFrom(int index) {
+        Vector<StmtNode.Declaration> items = new Vector<>();
+        return parseFrom(index, items::add) ? new StmtNode.CompilationUnit(items) : null;
+    }
+
+    private boolean parseFrom(int index, Consumer<StmtNode.Declaration> consumer) {
+        if(memoize) {
+            int size = RULES * (end - begin + 1);
+            memo_nodes = new ExprNode[size];
+            memo_ends = new int[size];
+            memo_errors = new ParserError[size];
+            memo_tokens = new Token[size][];
+        }
         try {
-            return parseCompilationUnit(0);
+            parseCompilationUnit(index, consumer);
+            return true;
         } catch (ParserError parserError) {
-            errorCollector.add(parserError);
+            report(parserError);
+            return false;
+        } finally {
+            item_tokens = new Vector<>();
+        }
+    }
+
+    // region Reparse
+
+    // External declarations of the previous tree that may be reused, from
+    // reuse_next on, their tokens moved by reuse_shift.
+    private Vector<StmtNode.Declaration> reuse;
+    private int reuse_next;
+    private int reuse_shift;
+    private int reuse_from;     // the first one reused.
+
+    /**
+     * Parse the tokens again after an edit, reusing the external
+     * declarations of the previous tree that the edit did not touch.
+     *
+     * Parsing restarts after the last declaration before the edit, and
+     * stops as soon as it reaches the start of a declaration after it.
+     * From there on the previous declarations are moved into the new tree,
+     * with their tokens shifted. Declarations that had errors are never
+     * reused, so the errors reported are still those of the whole file.
+     * They are added to the collector of this parser, which should hold
+     * nothing from the previous parse: create the parser with a new
+     * <code>ErrorCollector</code> for each version of the source.
+     *
+     * @param previous tree of the tokens before the edit. Its declarations
+     *                 are moved into the new tree, it must not be used
+     *                 afterwards.
+     * @param edit the tokens changed, see <code>Lexer.getLastEdit</code>.
+     */
+    public StmtNode.CompilationUnit reparse(StmtNode.CompilationUnit previous, TokenEdit edit) {
+        if(previous == null || edit == null || brackets.getMismatches().length > 0)
+            return parse();
+        Vector<StmtNode.Declaration> old = previous.getNodes();
+
+        // Declarations that end before the edit are kept as they are, and
+        // those that start after it may be reused, as long as no tokens
+        // were skipped between them by error recovery. One without a
+        // source had errors, and is parsed again.
+        int first = 0;
+        int kept_end = begin;
+        while(first < old.size() && old.get(first).getBegin() == kept_end && old.get(first).getEnd() < edit.begin)
+            kept_end = old.get(first++).getEnd();
+        int last = old.size();
+        int reused_begin = end - edit.shift();
+        while(last > first && old.get(last - 1).getBegin() >= edit.old_end && old.get(last - 1).getEnd() == reused_begin)
+            reused_begin = old.get(--last).getBegin();
+
+        reuse = old;
+        reuse_next = last;
+        reuse_shift = edit.shift();
+        reuse_from = old.size();
+        StmtNode.CompilationUnit middle = parseFrom(kept_end);
+        reuse = null;
+        if(middle == null)
             return null;
+
+        Vector<StmtNode.Declaration> items = new Vector<>(old.subList(0, first));
+        items.addAll(middle.getNodes());
+        // Only the columns of the tokens on the line the edit ends in change.
+        int edit_line = edit.new_end < end ? tokens.line(edit.new_end) : -1;
+        for(int i=reuse_from; i<old.size(); ++i)
+            items.add(shift(old.get(i), reuse_shift, edit_line));
+        return new StmtNode.CompilationUnit(items);
+    }
+
+    /**
+     * Whether the parse reached the start of a declaration to reuse.
+     */
+    private boolean canReuse(int index) {
+        if(reuse == null)
+            return false;
+        while(reuse_next < reuse.size() && reuse.get(reuse_next).getBegin() + reuse_shift < index)
+            reuse_next += 1;
+        if(reuse_next < reuse.size() && reuse.get(reuse_next).getBegin() + reuse_shift == index) {
+            reuse_from = reuse_next;
+            return true;
         }
+        return false;
     }
 
+    /**
+     * Move a declaration, and the tokens it holds, by shift tokens.
+     */
+    private StmtNode.Declaration shift(StmtNode.Declaration item, int shift, int edit_line) {
+        for(Token token : item.getTokens()) {
+            int index = token.number + shift;
+            token.number = index;
+            token.line = tokens.line(index);
+            token.offset = tokens.start(index);
+            if(token.line == edit_line)
+                token.column = tokens.column(index);
+        }
+        item.setSource(item.getBegin() + shift, item.getEnd() + shift, item.getTokens());
+        return item;
+    }
+
+    // endregion
+
     /**
      * Error recovery.
      */
     private int recovery(int index) {
         int i;
-        int current_line = tokens.get(index).line;
-        for(i=index+1; i<tokens.size(); ++i) {
-            if(tokens.get(i).line != current_line)
+        int current_line = tokens.line(index);
+        for(i=index+1; i<end; ++i) {
+            if(tokens.line(i) != current_line)
                 return i;
             if(check(i, SEMICOLON, RIGHT_PAREN))
                 return i+1;
@@ -51,47 +239,161 @@ public class Parser {
         return i;
     }
 
-    private StmtNode.CompilationUnit parseCompilationUnit(int index) throws ParserError {
-        Vector<StmtNode.Declaration> items = new Vector<>();
+    private void parseCompilationUnit(int index, Consumer<StmtNode.Declaration> consumer) throws ParserError {
         StmtNode.Declaration item;
 
         ParserError best_error = null;
 
-        while(!isAtEnd(index)) {
-            try {
-                item = parseDeclaration(index);
-                index = last_index;
-                items.add(item);
-                continue;
-            } catch (ParserError parserError) {
-//                parserError.printStackTrace();
-                if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                    best_error = parserError;
-            }
+        while(!isAtEnd(index) && !canReuse(index)) {
+            int begin = index;
+            int error_count = errorCollector.getErrorCount();
+            item_tokens = new Vector<>();
+            depth = 0;
 
             try {
-                item = parseFunctionDefinition(index);
-                index = last_index;
-                items.add(item);
+                if(iterative != null) {
+                    item = iterative.parseExternalDeclaration(index);
+                    if(item != null) {
+                        index = last_index;
+                        accept(consumer, located(item, begin, error_count), begin);
+                        continue;
+                    }
+                }
+
+                try {
+                    item = parseDeclaration(index);
+                    index = last_index;
+                    accept(consumer, located(item, begin, error_count), begin);
+                    continue;
+                } catch (ParserError parserError) {
+//                    parserError.printStackTrace();
+                    if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
+                        best_error = parserError;
+                }
+
+                try {
+                    item_tokens = new Vector<>();
+                    item = parseFunctionDefinition(index);
+                    index = last_index;
+                    accept(consumer, located(item, begin, error_count), begin);
+                    continue;
+                } catch (ParserError parserError) {
+//                    parserError.printStackTrace();
+                    if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
+                        best_error = parserError;
+                }
+            } catch (TooDeep tooDeep) {
+                item = parseDeep(index);
+                if(item != null) {
+                    index = last_index;
+                    accept(consumer, located(item, begin, error_count), begin);
+                    continue;
+                }
+                // Skip the whole declaration, its parts are just as deep.
+                report(new ParserError(tooDeep.index + 1, "too deeply nested", tokens, AT));
+                int next = brackets.declarationEnd(tokens, index, end);
+                index = next < 0 ? recovery(index) : next;
                 continue;
-            } catch (ParserError parserError) {
-//                parserError.printStackTrace();
-                if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                    best_error = parserError;
             }
             if(isAtEnd(index)) {
                 break;
             }
             index = recovery(index);
-            errorCollector.add(best_error);
+            report(best_error);
         }
 
-        if(isAtEnd(index))
-            return new StmtNode.CompilationUnit(items);
-        else
+        if(!isAtEnd(index) && !canReuse(index))
             throw best_error;
     }
 
+    /**
+     * Hand over a declaration parsed from begin on, and forget everything
+     * about it the parser still holds.
+     */
+    private void accept(Consumer<StmtNode.Declaration> consumer, StmtNode.Declaration item, int begin) {
+        item_tokens = new Vector<>();
+        if(memoize)
+            forget(begin, last_index);
+        consumer.accept(item);
+    }
+
+    /**
+     * Record where an external declaration came from, if it was parsed
+     * without errors, so that it can be reused by <code>reparse</code>.
+     */
+    private StmtNode.Declaration located(StmtNode.Declaration item, int begin, int error_count) {
+        if(errorCollector.getErrorCount() == error_count)
+            item.setSource(begin, last_index, memoize ? distinct(item_tokens) : item_tokens);
+        return item;
+    }
+
+    /**
+     * Report an error, unless it is about an unmatched bracket, which
+     * <code>reportMismatches</code> reported already: the rules fail at a
+     * bracket without a pair, e.g. a ')' where a ';' is expected, or
+     * expect the pair of a bracket that has none.
+     */
+    private void report(ParserError error) {
+        if(error != null && brackets.getMismatches().length > 0) {
+            int index = error.getIndex();
+            if(index < tokens.size() && brackets.hasMismatch(index, index + 1))
+                return;
+            TokenType[] expected = error.getExpected();
+            if(expected != null && expected.length == 1 && brackets.hasUnmatched(tokens, expected[0], index))
+                return;
+        }
+        errorCollector.add(error);
+    }
+
+    // region Depth
+
+    // Nesting depth at which the recursive rules give up on an external
+    // declaration, far below what overflows a default thread stack.
+    private static final int MAX_DEPTH = 500;
+
+    /**
+     * Thrown by the recursive rules past <code>MAX_DEPTH</code>. It is not
+     * a <code>ParserError</code>, so that no rule recovers from it, and the
+     * whole external declaration is given up.
+     */
+    private static class TooDeep extends RuntimeException {
+        final int index;
+
+        TooDeep(int index) {
+            super(null, null, false, false);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Go one level deeper, at index. Each rule that calls <code>enter</code>
+     * leaves with <code>depth -= 1</code>.
+     */
+    private void enter(int index) {
+        depth += 1;
+        if(depth > MAX_DEPTH)
+            throw new TooDeep(index);
+    }
+
+    /**
+     * Parse an external declaration too deep for the recursive rules with
+     * the iterative parser.
+     * @return null if it does not parse, or is still too deep.
+     */
+    private StmtNode.Declaration parseDeep(int index) {
+        if(deep == null)
+            deep = iterative != null ? iterative : new IterativeParser(this, tokens, brackets);
+        item_tokens = new Vector<>();
+        depth = 0;
+        try {
+            return deep.parseExternalDeclaration(index);
+        } catch (TooDeep tooDeep) {
+            return null;
+        }
+    }
+
+    // endregion
+
     private StmtNode.Declaration parseFunctionDefinition(int index) throws ParserError {
         Vector<Token> specs = parseDeclSpecifiers(index);
         index = last_index;
@@ -154,12 +456,12 @@ public class Parser {
      *
      * TODO: combination, such as `unsigned int`, `static int`.
      */
-    private Vector<Token> parseDeclSpecifiers(int index) throws ParserError {
+    Vector<Token> parseDeclSpecifiers(int index) throws ParserError {
         Vector<Token> specs = new Vector<>();
 
         if (check(index, INT) || check(index, DOUBLE) ||
                 check(index, CHAR) || check(index, VOID)) {
-            specs.add(tokens.get(index));
+            specs.add(token(index));
         }
         if(specs.isEmpty())
             throw new ParserError(index, "expect specifiers", tokens, BEFORE);
@@ -175,7 +477,7 @@ public class Parser {
      * 2. array: int apple[10][2]; apple[10][2] is the declarator.
      * 3. function: int f(int a, int b) {...} f(int a, int b) is the declarator.
      */
-    private DeclNode parseDeclarator(int index) throws ParserError {
+    DeclNode parseDeclarator(int index) throws ParserError {
         // find the range of the declarator. We need the last token to
         // identifier the type of the declarator.
         int end = findDeclaratorEnd(index);
@@ -189,10 +491,18 @@ public class Parser {
      * Parse declarator between start and end(exclusive).
      */
     private DeclNode parseDeclarator(int start, int end) throws ParserError {
+        enter(start);
+        try {
+            return parseDeclaratorRule(start, end);
+        } finally {
+            depth -= 1;
+        }
+    }
 
+    private DeclNode parseDeclaratorRule(int start, int end) throws ParserError {
         if(start + 1 == end && check(start, IDENTIFIER)) {
             // TODO: add to symbol table.
-            return new DeclNode.Identifier(tokens.get(start));
+            return new DeclNode.Identifier(token(start));
         }
 
         // array = declarator[expression]
@@ -267,18 +577,18 @@ public class Parser {
      * @return : end index. The range of the declarator is [start, end).
      */
     private int findDeclaratorEnd(int index) throws ParserError {
-        if(check(index, IDENTIFIER))
-            return findDeclaratorEnd(index+1);
-        else if(check(index, LEFT_PAREN)) {
-            int close = findPairForward(index, LEFT_PAREN);
-            return findDeclaratorEnd(close+1);
-        } else if(check(index, LEFT_BRACKET)) {
-            int close = findPairForward(index, LEFT_BRACKET);
-            return findDeclaratorEnd(close+1);
-        } else
-            // After matching parenthesis, bracket and identifier,
-            // we should meet the end of the declarator.
-            return index;
+        while(true) {
+            if(check(index, IDENTIFIER))
+                index += 1;
+            else if(check(index, LEFT_PAREN))
+                index = findPairForward(index, LEFT_PAREN) + 1;
+            else if(check(index, LEFT_BRACKET))
+                index = findPairForward(index, LEFT_BRACKET) + 1;
+            else
+                // After matching parenthesis, bracket and identifier,
+                // we should meet the end of the declarator.
+                return index;
+        }
     }
 
     // endregion
@@ -300,24 +610,22 @@ public class Parser {
         }
 
         while (!isAtEnd(index)) {
+            // A type specifier can only start a declaration, anything else
+            // is a statement.
             try {
-                item = parseDeclaration(index);
-                index = last_index;
-                items.add(item);
-                continue;
-            } catch (ParserError parserError) {
-                if (best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                    best_error = parserError;
-            }
-
-            try {
-                item = parseStatement(index);
+                if(isSpecifier(index))
+                    item = parseDeclaration(index);
+                else
+                    item = parseStatement(index);
                 index = last_index;
                 items.add(item);
                 continue;
             } catch (ParserError parserError) {
-                if (best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                    best_error = parserError;
+                best_error = parserError;
+                // A statement that fails on its first token is reported as a
+                // missing declaration.
+                if(!isSpecifier(index) && parserError.parsed_amount <= index)
+                    best_error = new ParserError(index, "expect specifiers", tokens, BEFORE);
             }
             if (isAtEnd(index))
                 break;
@@ -327,7 +635,10 @@ public class Parser {
                 break;
             }
             index = recovery(index);
-            errorCollector.add(best_error);
+            // Recovery skips to the next line, which may be past the '}'.
+            if (right != -1 && index > right)
+                index = right;
+            report(best_error);
         }
 
         try {
@@ -335,71 +646,38 @@ public class Parser {
             last_index = index;
             return new StmtNode.Compound(items);
         } catch (ParserError parserError) {
-            errorCollector.add(parserError);
+            report(parserError);
+            // Go on after the last item, as if the '}' was there.
+            last_index = index;
             return new StmtNode.Compound(items);
         }
     }
 
+    /**
+     * Pick the statement by its first token.
+     */
     private StmtNode parseStatement(int index) throws ParserError {
-        ParserError best_error = null;
-
+        enter(index);
         try {
-            return parseIfStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
-        }
-
-        try {
-            return parseWhileStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
-        }
-
-        try {
-            return parseReturnStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
-        }
-
-        try {
-            return parseBreakStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
-        }
-
-        try {
-            return parseContinueStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
-        }
-
-        try {
-            return parseCompoundStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
-        }
-
-        try {
-            return parseEmptyStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
+            return parseStatementRule(index);
+        } finally {
+            depth -= 1;
         }
+    }
 
-        try {
+    private StmtNode parseStatementRule(int index) throws ParserError {
+        if(isAtEnd(index))
             return parseExpressionStatement(index);
-        } catch (ParserError parserError) {
-            if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
-                best_error = parserError;
+        switch (tokens.type(index)) {
+            case IF: return parseIfStatement(index);
+            case WHILE: return parseWhileStatement(index);
+            case RETURN: return parseReturnStatement(index);
+            case BREAK: return parseBreakStatement(index);
+            case CONTINUE: return parseContinueStatement(index);
+            case LEFT_BRACE: return parseCompoundStatement(index);
+            case SEMICOLON: return parseEmptyStatement(index);
+            default: return parseExpressionStatement(index);
         }
-
-        throw best_error;
     }
 
     private StmtNode parseIfStatement(int index) throws ParserError {
@@ -447,14 +725,17 @@ public class Parser {
             try {
                 last_index = match(index, SEMICOLON);
             } catch (ParserError parserError) {
-                errorCollector.add(parserError);
+                // Go on after the value, as if the ';' was there.
+                report(parserError);
+                last_index = index;
             }
             return new StmtNode.Return(value);
-        } catch (Exception e) {
+        } catch (ParserError e) {
             try {
                 last_index = match(index, SEMICOLON);
             } catch (ParserError parserError) {
-                errorCollector.add(parserError);
+                report(parserError);
+                last_index = index;
             }
             return new StmtNode.Return(null);
         }
@@ -503,6 +784,15 @@ public class Parser {
     }
 
     private ExprNode parseAssignment(int index) throws ParserError {
+        enter(index);
+        try {
+            return memo_ends != null ? memoized(ASSIGNMENT, index) : parseAssignmentRule(index);
+        } finally {
+            depth -= 1;
+        }
+    }
+
+    private ExprNode parseAssignmentRule(int index) throws ParserError {
         int save = index;
 
         ParserError best_error = null;
@@ -514,23 +804,7 @@ public class Parser {
             index = match(index, ASSIGN, ADD_ASSIGN, SUB_ASSIGN, MULTI_ASSIGN, DIV_ASSIGN);
             int op = index-1;
             ExprNode another = parseAssignment(index);
-            switch (tokens.get(op).type) {
-                case ASSIGN:
-                    node = new ExprNode.Assign(node, another);
-                    break;
-                case ADD_ASSIGN:
-                    node = new ExprNode.AddAssign(node, another);
-                    break;
-                case SUB_ASSIGN:
-                    node = new ExprNode.SubAssign(node, another);
-                    break;
-                case MULTI_ASSIGN:
-                    node = new ExprNode.MultiAssign(node, another);
-                    break;
-                case DIV_ASSIGN:
-                    node = new ExprNode.DivAssign(node, another);
-                    break;
-            }
+            node = makeAssign(tokens.type(op), node, another);
             return node;
         } catch (ParserError parserError) {
             if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
@@ -538,7 +812,7 @@ public class Parser {
         }
 
         try {
-            return parseLogicalOr(save);
+            return parseBinary(save, 1);
         } catch (ParserError parserError) {
             if(best_error == null || best_error.parsed_amount < parserError.parsed_amount)
                 best_error = parserError;
@@ -547,177 +821,82 @@ public class Parser {
         throw best_error;
     }
 
-    private ExprNode parseLogicalOr(int index) throws ParserError {
-        ExprNode node = parseLogicalAnd(index);
-        index = last_index;
-
-        while(check(index, REL_OR)) {
-            index += 1;
-            ExprNode another = parseLogicalAnd(index);
-            index = last_index;
-            node = new ExprNode.LogicalOr(node, another);
-        }
-
-        return node;
-    }
-
-    private ExprNode parseLogicalAnd(int index) throws ParserError {
-        ExprNode node = parseBitOR(index);
-        index = last_index;
-
-        while(check(index, REL_AND)) {
-            index += 1;
-            ExprNode another = parseBitOR(index);
-            index = last_index;
-            node = new ExprNode.LogicalAnd(node, another);
+    static ExprNode makeAssign(TokenType op, ExprNode left, ExprNode right) {
+        switch (op) {
+            case ADD_ASSIGN: return new ExprNode.AddAssign(left, right);
+            case SUB_ASSIGN: return new ExprNode.SubAssign(left, right);
+            case MULTI_ASSIGN: return new ExprNode.MultiAssign(left, right);
+            case DIV_ASSIGN: return new ExprNode.DivAssign(left, right);
+            default: return new ExprNode.Assign(left, right);
         }
-
-        return node;
     }
 
-    private ExprNode parseBitOR(int index) throws ParserError {
-        ExprNode node = parseBitXOR(index);
-        index = last_index;
-
-        while(check(index, OR)) {
-            index += 1;
-            ExprNode another = parseBitXOR(index);
-            index = last_index;
-            node = new ExprNode.BitOR(node, another);
-        }
-
-        return node;
+    // Binding power of binary operators, 0 for other tokens. All of them
+    // are left associative.
+    static final int[] binding_power = new int[TokenType.values().length];
+
+    static {
+        binding_power[REL_OR.ordinal()] = 1;
+        binding_power[REL_AND.ordinal()] = 2;
+        binding_power[OR.ordinal()] = 3;
+        binding_power[XOR.ordinal()] = 4;
+        binding_power[AND.ordinal()] = 5;
+        for(TokenType type : new TokenType[] {EQUAL, NOT_EQUAL})
+            binding_power[type.ordinal()] = 6;
+        for(TokenType type : new TokenType[] {GREATER, GREATER_EQUAL, LESS, LESS_EQUAL})
+            binding_power[type.ordinal()] = 7;
+        for(TokenType type : new TokenType[] {LEFT_SHIFT, RIGHT_SHIFT})
+            binding_power[type.ordinal()] = 8;
+        for(TokenType type : new TokenType[] {ADD, SUB})
+            binding_power[type.ordinal()] = 9;
+        for(TokenType type : new TokenType[] {MULTI, DIV, MOD})
+            binding_power[type.ordinal()] = 10;
     }
 
-    private ExprNode parseBitXOR(int index) throws ParserError {
-        ExprNode node = parseBitAnd(index);
-        index = last_index;
-
-        while(check(index, XOR)) {
-            index += 1;
-            ExprNode another = parseBitAnd(index);
-            index = last_index;
-            node = new ExprNode.BitXOR(node, another);
-        }
-
-        return node;
-    }
-
-    private ExprNode parseBitAnd(int index) throws ParserError {
-        ExprNode node = parseEquality(index);
-        index = last_index;
-
-        while(check(index, AND)) {
-            index += 1;
-            ExprNode another = parseBitAnd(index);
-            index = last_index;
-            node = new ExprNode.BitAnd(node, another);
-        }
-
-        return node;
-    }
-
-    private ExprNode parseEquality(int index) throws ParserError {
-        ExprNode node = parseRelational(index);
-        index = last_index;
-
-        while(check(index, EQUAL, NOT_EQUAL)) {
-            int op = index;
-            index += 1;
-            ExprNode another = parseRelational(index);
-            index = last_index;
-            if(tokens.get(op).type == EQUAL)
-                node = new ExprNode.Equality(node, another);
-            else
-                node = new ExprNode.Inequality(node, another);
-        }
-
-        return node;
-    }
-
-    private ExprNode parseRelational(int index) throws ParserError {
-        ExprNode node = parseShift(index);
-        index = last_index;
-
-        while(check(index, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            int op = index;
-            index += 1;
-            ExprNode another = parseShift(index);
-            index = last_index;
-            switch (tokens.get(op).type) {
-                case GREATER:
-                    node = new ExprNode.Greater(node, another);
-                    break;
-                case GREATER_EQUAL:
-                    node = new ExprNode.GreaterEqual(node, another);
-                    break;
-                case LESS:
-                    node = new ExprNode.Less(node, another);
-                    break;
-                case LESS_EQUAL:
-                    node = new ExprNode.LessEqual(node, another);
-                    break;
-            }
-        }
-        return node;
-    }
-
-    private ExprNode parseShift(int index) throws ParserError {
-        ExprNode node = parseAdditive(index);
+    /**
+     * <logical-or-expression> and everything that binds tighter, down to
+     * <cast-expression>, by precedence climbing: operators binding at
+     * least <code>min_power</code> are folded in from left to right.
+     */
+    private ExprNode parseBinary(int index, int min_power) throws ParserError {
+        ExprNode node = parseCast(index);
         index = last_index;
 
-        while(check(index, LEFT_SHIFT, RIGHT_SHIFT)) {
-            int op = index;
-            index += 1;
-            ExprNode another = parseAdditive(index);
+        while(!isAtEnd(index)) {
+            TokenType op = tokens.type(index);
+            int power = binding_power[op.ordinal()];
+            if(power == 0 || power < min_power)
+                break;
+            ExprNode another = parseBinary(index + 1, power + 1);
             index = last_index;
-            if(tokens.get(op).type == LEFT_SHIFT)
-                node = new ExprNode.LShift(node, another);
-            else
-                node = new ExprNode.Rshift(node, another);
+            node = makeBinary(op, node, another);
         }
-        return node;
-    }
 
-    private ExprNode parseAdditive(int index) throws ParserError {
-        ExprNode node = parseMultiplicative(index);
-        index = last_index;
-
-        while(check(index, ADD, SUB)) {
-            int op = index;
-            index += 1;
-            ExprNode another = parseMultiplicative(index);
-            index = last_index;
-            if(tokens.get(op).type == ADD)
-                node = new ExprNode.Add(node, another);
-            else
-                node = new ExprNode.Minus(node, another);
-        }
+        last_index = index;
         return node;
     }
 
-    private ExprNode parseMultiplicative(int index) throws ParserError {
-        ExprNode node = parseCast(index);
-        index = last_index;
-
-        while(check(index, MULTI, DIV, MOD)) {
-            int op = index;
-            index += 1;
-            ExprNode another = parseUnary(index);
-            index = last_index;
-            switch (tokens.get(op).type) {
-                case MULTI:
-                    node = new ExprNode.Multi(node, another);
-                    break;
-                case DIV:
-                    node = new ExprNode.Div(node, another);
-                    break;
-                case MOD:
-                    node = new ExprNode.Mod(node, another);
-                    break;
-            }
+    static ExprNode makeBinary(TokenType op, ExprNode left, ExprNode right) {
+        switch (op) {
+            case REL_OR: return new ExprNode.LogicalOr(left, right);
+            case REL_AND: return new ExprNode.LogicalAnd(left, right);
+            case OR: return new ExprNode.BitOR(left, right);
+            case XOR: return new ExprNode.BitXOR(left, right);
+            case AND: return new ExprNode.BitAnd(left, right);
+            case EQUAL: return new ExprNode.Equality(left, right);
+            case NOT_EQUAL: return new ExprNode.Inequality(left, right);
+            case GREATER: return new ExprNode.Greater(left, right);
+            case GREATER_EQUAL: return new ExprNode.GreaterEqual(left, right);
+            case LESS: return new ExprNode.Less(left, right);
+            case LESS_EQUAL: return new ExprNode.LessEqual(left, right);
+            case LEFT_SHIFT: return new ExprNode.LShift(left, right);
+            case RIGHT_SHIFT: return new ExprNode.Rshift(left, right);
+            case ADD: return new ExprNode.Add(left, right);
+            case SUB: return new ExprNode.Minus(left, right);
+            case MULTI: return new ExprNode.Multi(left, right);
+            case DIV: return new ExprNode.Div(left, right);
+            default: return new ExprNode.Mod(left, right);
         }
-        return node;
     }
 
     /**
@@ -726,6 +905,15 @@ public class Parser {
      */
 
     private ExprNode parseCast(int index) throws ParserError {
+        enter(index);
+        try {
+            return memo_ends != null ? memoized(CAST, index) : parseCastRule(index);
+        } finally {
+            depth -= 1;
+        }
+    }
+
+    private ExprNode parseCastRule(int index) throws ParserError {
         int save = index;
         ParserError best_error = null;
 
@@ -755,11 +943,15 @@ public class Parser {
      *                      <unary-operator> <cast-expression>
      */
     private ExprNode parseUnary(int index) throws ParserError {
+        return memo_ends != null ? memoized(UNARY, index) : parseUnaryRule(index);
+    }
+
+    private ExprNode parseUnaryRule(int index) throws ParserError {
         int save = index;
         if(check(index, REL_NOT, ADD, SUB)) {
             index += 1;
             ExprNode expr;
-            switch (tokens.get(index-1).type) {
+            switch (tokens.type(index-1)) {
                 case REL_NOT:
                     expr = parseCast(index);
                     return new ExprNode.LogicalNot(expr);
@@ -853,27 +1045,35 @@ public class Parser {
     private ExprNode parseIdentifier(int index) throws ParserError {
         index = match(index, IDENTIFIER);
         last_index = index;
-        return new ExprNode.Identifier(tokens.get(index-1).value);
+        return new ExprNode.Identifier(tokens.value(index-1), tokens.symbol(index-1));
     }
 
     private ExprNode parseNumber(int index) throws ParserError {
         if(check(index, INTEGER_CONSTANT, DOUBLE_CONSTANT, CHARACTER_CONSTANT)) {
             last_index = index + 1;
-            double constant;
-            if(tokens.get(index).type == CHARACTER_CONSTANT)
-                constant = (int)(tokens.get(index).value.charAt(0));
-            else
-                constant = Double.valueOf(tokens.get(index).value);
-            return new ExprNode.Number(constant);
+            return number(index);
         } else {
             throw new ParserError(index, "expect number", tokens, AFTER);
         }
     }
 
+    /**
+     * The value of the constant at index. An integer constant too large
+     * for a long is not valid, and gets its double value instead.
+     */
+    ExprNode.Number number(int index) {
+        TokenType type = tokens.type(index);
+        if(type == DOUBLE_CONSTANT)
+            return new ExprNode.Number(tokens.real(index));
+        if(type == INTEGER_CONSTANT && !tokens.valid(index))
+            return new ExprNode.Number(Double.parseDouble(tokens.value(index)));
+        return new ExprNode.Number(tokens.integer(index));
+    }
+
     private ExprNode parseString(int index) throws ParserError {
         index = match(index, STRING);
         last_index = index;
-        return new ExprNode.StringExpr(tokens.get(index-1).value);
+        return new ExprNode.StringExpr(tokens.value(index-1));
     }
 
     private ExprNode parseParenExpression(int index) throws ParserError {
@@ -887,117 +1087,172 @@ public class Parser {
 
 
 
+    // endregion
+
+    // region Memo
+
+    private static final int ASSIGNMENT = 0;
+    private static final int CAST = 1;
+    private static final int UNARY = 2;
+    private static final int RULES = 3;
+
+    // Indexed by rule * (end - begin + 1) + start index - begin.
+    private ExprNode[] memo_nodes;
+    private int[] memo_ends;    // 0 if not parsed yet, -1 if failed, end index + 1 otherwise.
+    private ParserError[] memo_errors;
+    private Token[][] memo_tokens;  // the tokens built for the node, see item_tokens.
+
+    private ExprNode memoized(int rule, int index) throws ParserError {
+        int key = rule * (end - begin + 1) + index - begin;
+        int memo_end = memo_ends[key];
+        if(memo_end > 0) {
+            // The node may come from an earlier attempt, whose tokens were
+            // not kept. distinct drops them if they were.
+            Collections.addAll(item_tokens, memo_tokens[key]);
+            last_index = memo_end - 1;
+            return memo_nodes[key];
+        }
+        if(memo_end < 0)
+            throw memo_errors[key];
+
+        int token_count = item_tokens.size();
+        try {
+            ExprNode node;
+            switch (rule) {
+                case ASSIGNMENT:
+                    node = parseAssignmentRule(index);
+                    break;
+                case CAST:
+                    node = parseCastRule(index);
+                    break;
+                default:
+                    node = parseUnaryRule(index);
+                    break;
+            }
+            memo_nodes[key] = node;
+            memo_ends[key] = last_index + 1;
+            memo_tokens[key] = item_tokens.subList(token_count, item_tokens.size()).toArray(new Token[0]);
+            return node;
+        } catch (ParserError parserError) {
+            memo_errors[key] = parserError;
+            memo_ends[key] = -1;
+            throw parserError;
+        }
+    }
+
+    /**
+     * Drop the results memoized in [from, to). Parsing never goes back
+     * before a finished external declaration, so they are not needed
+     * anymore, and would keep its nodes alive.
+     */
+    private void forget(int from, int to) {
+        int size = end - begin + 1;
+        for(int rule=0; rule<RULES; ++rule) {
+            int key = rule * size - begin;
+            Arrays.fill(memo_ends, key + from, key + to, 0);
+            Arrays.fill(memo_nodes, key + from, key + to, null);
+            Arrays.fill(memo_errors, key + from, key + to, null);
+            Arrays.fill(memo_tokens, key + from, key + to, null);
+        }
+    }
+
+    /**
+     * Drop the tokens added more than once by memo hits, so that
+     * <code>shift</code> moves each of them once.
+     */
+    private static Vector<Token> distinct(Vector<Token> tokens) {
+        Set<Token> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Vector<Token> result = new Vector<>(tokens.size());
+        for(Token token : tokens) {
+            if(seen.add(token))
+                result.add(token);
+        }
+        return result;
+    }
+
     // endregion
 
     // region FindPair
     /**
-     * Find the index of the paired token for the token started at `index`
-     * This function throw a `ParseError` when there is mismatch. However, it does not
-     * guarantee the correctness when no error is thrown.
+     * Find the index of the paired token for the token started at `index`,
+     * by looking it up in the bracket table.
+     * This function throw a `ParseError` when there is mismatch.
      */
     private int findPairForward(int index, TokenType match) throws ParserError {
-        if(match == LEFT_PAREN) {
-            String msg = "mismatched parenthesis in declaration";
-            return findPairForward(index, LEFT_PAREN, RIGHT_PAREN, msg);
-        }else if(match == LEFT_BRACKET) {
-            String msg = "mismatched square brackets in declaration";
-            return findPairForward(index, LEFT_BRACKET, RIGHT_BRACKET, msg);
-        } else {
-            String msg = "mismatched square brace in declaration";
-            return findPairForward(index, LEFT_BRACE, RIGHT_BRACE, msg);
-        }
+        int pair = brackets.pair(index);
+        if(pair < 0)
+            throw new ParserError(index + 1, mismatchMessage(match), tokens, AT);
+        return pair;
     }
 
     /**
      * The same as `findPairForward`, but in a reverse order.
      */
     private int findPairBackward(int index, TokenType match) throws ParserError {
-        if(match == RIGHT_PAREN) {
-            String msg = "mismatched parenthesis in declaration";
-            return findPairBackward(index, LEFT_PAREN, RIGHT_PAREN, msg);
-        } else if(match == RIGHT_BRACKET){
-            String msg = "mismatched square brackets in declaration";
-            return findPairBackward(index, LEFT_BRACKET, RIGHT_BRACKET, msg);
-        }
-        String msg = "mismatched square brace in declaration";
-        return findPairForward(index, LEFT_BRACE, RIGHT_BRACE, msg);
+        return findPairForward(index, match);
     }
 
-    private int findPairForward(int index, TokenType left, TokenType right, String msg) throws ParserError {
-        int depth = 0;
-        int i;
-        for(i=index; i<tokens.size(); i++) {
-            if(check(i, left))
-                depth += 1;
-            else if(check(i, right))
-                depth -= 1;
-            if(depth == 0)
-                break;
+    private static String mismatchMessage(TokenType match) {
+        switch (match) {
+            case LEFT_PAREN: case RIGHT_PAREN:
+                return "mismatched parenthesis in declaration";
+            case LEFT_BRACKET: case RIGHT_BRACKET:
+                return "mismatched square brackets in declaration";
+            default:
+                return "mismatched square brace in declaration";
         }
-        if(depth != 0)
-            throw new ParserError(index, msg, tokens, AT);
-        // TODO: raise mismatch error.
-        return i;
     }
 
-    private int findPairBackward(int index, TokenType left, TokenType right, String msg) throws ParserError {
-        int depth = 0;
-        int i;
-        for(i=index; i>=0; i--) {
-            if(check(i, right))
-                depth += 1;
-            else if(check(i, left))
-                depth -= 1;
-            if(depth == 0)
-                break;
-        }
-        if(depth != 0)
-            throw new ParserError(index, msg,tokens, AT);
-        return i;
+    /**
+     * Report every unmatched bracket at once, before parsing.
+     */
+    private void reportMismatches() {
+        for(int index : brackets.getMismatches())
+            errorCollector.add(new ParserError(index + 1, "unmatched bracket", tokens, AT));
     }
     // endregion
 
     //region Function Relates Tokens
 
+    /**
+     * Build the token at index for the tree. It is kept with the external
+     * declaration being parsed, to be shifted when that is reused.
+     */
+    private Token token(int index) {
+        Token token = tokens.get(index);
+        item_tokens.add(token);
+        return token;
+    }
+
     private int match(int index, TokenType... types) throws ParserError {
         if (isAtEnd(index)) {
 
-            throw new ParserError(index, "expect " + strRepr(types),tokens, AFTER);
+            throw new ParserError(index, types, tokens, AFTER);
         }
         if (check(index, types))
             return index + 1;
         else {
-            throw new ParserError(index, "expect " + strRepr(types),tokens, AFTER);
+            throw new ParserError(index, types, tokens, AFTER);
         }
     }
 
     private boolean check(int index, TokenType... types) {
         if (isAtEnd(index)) return false;
         for(TokenType type : types) {
-            if (tokens.get(index).type == type)
+            if (tokens.type(index) == type)
                 return true;
         }
         return false;
     }
 
-    private boolean isAtEnd(int index) {
-        return index >= tokens.size();
+    private boolean isSpecifier(int index) {
+        return check(index, INT, DOUBLE, CHAR, VOID);
     }
 
-    // TODO: improve it
-    private String strRepr(TokenType... types) {
-        StringBuilder builder = new StringBuilder();
-
-        for(int i = 0; i<types.length; ++i) {
-            if(i != 0)
-                builder.append(" || ");
-            if(value.containsKey(types[i]))
-                builder.append("'" + value.get(types[i]) + "'");
-            else
-                builder.append(types[i].toString().toLowerCase());
-        }
-
-        return builder.toString();
+    boolean isAtEnd(int index) {
+        return index >= end;
     }
+
+    // TODO: improve it
     //endregion
 }